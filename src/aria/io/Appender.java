@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind Appender.
+ *
+ * <p>Messages from any number of threads are encoded into a shared batch
+ * which a background thread writes at the end of the file once it reaches
+ * the batch size or once the flush interval elapses, so concurrent producers
+ * commit together. While a batch is being written the next one keeps
+ * filling; producers only wait when both are full.</p>
+ *
+ * <p>Each message is encoded by its producer before it enters the batch and
+ * is copied into it in one step, so messages never interleave. A message
+ * longer than a whole batch is copied over several batches while the other
+ * producers wait.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+public final class Appender implements java.io.Closeable, java.io.Flushable {
+
+	/** The channel of the file. */
+	private final FileChannel channel;
+
+	/** The encoder of each producer. */
+	private final ThreadLocal<CharsetEncoder> encoders;
+
+	/** The encoded message of each producer. */
+	private final ThreadLocal<ByteBuffer> scratch = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
+	/** Number of bytes which triggers a write. */
+	private final int batchSize;
+
+	/** Maximum time a message waits to be written, {@code 0} if unbounded. */
+	private final long flushNanos;
+
+	/** When written batches are synced to the device. */
+	private final Sync sync;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signaled when the flusher has work to do. */
+	private final Condition ready = lock.newCondition();
+
+	/** Signaled when a batch was taken or written. */
+	private final Condition drained = lock.newCondition();
+
+	/** The thread writing the batches. */
+	private final Thread flusher;
+
+	/** The batch being filled. */
+	private ByteBuffer active;
+
+	/** The batch being written. */
+	private ByteBuffer standby;
+
+	/** Number of batches taken by the flusher. */
+	private long swaps;
+
+	/** Number of bytes appended. */
+	private long appended;
+
+	/** Number of bytes written. */
+	private long written;
+
+	/** The producer copying a message longer than a batch, if any. */
+	private Thread owner;
+
+	/** Whether a flush was requested. */
+	private boolean flushing;
+
+	/** Whether this appender was closed. */
+	private boolean closed;
+
+	/** The error which stopped the flusher. */
+	private IOException failure;
+
+	/** Last time the file was synced. */
+	private long synced = System.nanoTime();
+
+	/**
+	 * Open an appender over a file.
+	 *
+	 * @param path        the path to the file, created if missing
+	 * @param charset     the charset of the messages
+	 * @param batchSize   number of bytes which triggers a write
+	 * @param flushMillis maximum time a message waits to be written, {@code 0}
+	 *                    to wait for a full batch
+	 * @param sync        when written batches are synced to the device
+	 *
+	 * @throws IOException if the file can't be opened
+	 */
+	Appender(final Path path, final Charset charset, final int batchSize, final long flushMillis, final Sync sync) throws IOException {
+		if (batchSize <= 0 || batchSize > 1 << 30) throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		encoders = ThreadLocal.withInitial(() -> charset.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE));
+		this.batchSize = batchSize;
+		this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(flushMillis, 0));
+		this.sync = sync == null ? Sync.NEVER : sync;
+		// Room past the batch size, so a full batch always overflows past it.
+		active = ByteBuffer.allocateDirect(batchSize + Math.max(batchSize, 64));
+		standby = ByteBuffer.allocateDirect(active.capacity());
+		flusher = new Thread(this::run, "aria-appender-" + path.getFileName());
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Append a message.
+	 *
+	 * <p>The message is in the file once a later {@link #flush()} or
+	 * {@link #close()} returns.</p>
+	 *
+	 * @param message the message
+	 *
+	 * @throws IOException if this appender is closed or failed to write
+	 */
+	public void append(final CharSequence message) throws IOException {
+		final var bytes = encode(message);
+		final var self = Thread.currentThread();
+		lock.lock();
+		try {
+			while (true) {
+				while (owner != null && owner != self) {
+					check();
+					drained.await();
+				}
+				check();
+				if (bytes.remaining() > active.capacity()) owner = self;
+				final var n = Math.min(bytes.remaining(), active.remaining());
+				// Split only messages which can't fit in any batch.
+				if (n == bytes.remaining() || owner == self && n > 0) {
+					active.put(bytes.slice().limit(n));
+					bytes.position(bytes.position() + n);
+					appended += n;
+				}
+				if (!bytes.hasRemaining()) break;
+				final var taken = swaps;
+				ready.signal();
+				while (taken == swaps && failure == null && !closed) drained.await();
+			}
+			if (active.position() >= batchSize) ready.signal();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new java.io.InterruptedIOException(ex.getMessage());
+		} finally {
+			if (owner == self) {
+				owner = null;
+				drained.signalAll();
+			}
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Encode a message into the scratch buffer of the calling thread.
+	 *
+	 * @return the encoded message, ready to be read
+	 */
+	private ByteBuffer encode(final CharSequence message) {
+		final var encoder = encoders.get().reset();
+		final var in = CharBuffer.wrap(message);
+		var out = scratch.get().clear();
+		while (true) {
+			var cr = encoder.encode(in, out, true);
+			if (cr.isUnderflow()) cr = encoder.flush(out);
+			if (cr.isUnderflow()) break;
+			out = ByteBuffer.allocate(out.capacity() * 2).put(out.flip());
+			scratch.set(out);
+		}
+		return out.flip();
+	}
+
+	/**
+	 * Append messages.
+	 *
+	 * @param parts the messages
+	 *
+	 * @throws IOException if this appender is closed or failed to write
+	 */
+	public void append(final CharSequence... parts) throws IOException {
+		for (var v : parts) append(v);
+	}
+
+	/**
+	 * Write every message appended so far.
+	 *
+	 * <p>Written batches are synced as the {@link Sync} policy dictates.</p>
+	 *
+	 * @throws IOException if the messages can't be written
+	 */
+	@Override
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			final var target = appended;
+			flushing = true;
+			ready.signal();
+			while (written < target && failure == null) drained.await();
+			if (failure != null) throw failure;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new java.io.InterruptedIOException(ex.getMessage());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write every pending message and close the file.
+	 *
+	 * <p>Unless the policy is {@link Sync#NEVER}, the file is synced before
+	 * being closed.</p>
+	 *
+	 * @throws IOException if the messages can't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (closed) return;
+			closed = true;
+			ready.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			flusher.join();
+			if (failure == null && sync != Sync.NEVER) channel.force(false);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new java.io.InterruptedIOException(ex.getMessage());
+		} finally {
+			channel.close();
+		}
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * Throw if this appender can't take more messages.
+	 */
+	private void check() throws IOException {
+		if (failure != null) throw failure;
+		if (closed) throw new IOException("Appender is closed.");
+	}
+
+	/**
+	 * Wait for a batch to be due.
+	 *
+	 * @return {@code false} if there is nothing left to write
+	 */
+	private boolean await() throws InterruptedException {
+		var deadline = System.nanoTime() + flushNanos;
+		while (!closed && !flushing && active.position() < batchSize) {
+			if (flushNanos == 0) {
+				ready.await();
+				continue;
+			}
+			final var left = deadline - System.nanoTime();
+			if (left > 0) ready.awaitNanos(left);
+			else if (active.position() > 0) break;
+			else deadline = System.nanoTime() + flushNanos;
+		}
+		return !closed || active.position() > 0;
+	}
+
+	/**
+	 * Write batches until this appender is closed.
+	 */
+	private void run() {
+		lock.lock();
+		try {
+			while (await()) {
+				final var batch = active;
+				active = standby;
+				standby = batch;
+				flushing = false;
+				swaps++;
+				final var target = appended;
+				drained.signalAll();
+				lock.unlock();
+				try {
+					write(batch.flip());
+				} finally {
+					batch.clear();
+					lock.lock();
+				}
+				written = target;
+				drained.signalAll();
+			}
+		} catch (IOException ex) {
+			failure = ex;
+			drained.signalAll();
+		} catch (InterruptedException ex) {
+			failure = new java.io.InterruptedIOException(ex.getMessage());
+			drained.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write a batch and sync it if due.
+	 */
+	private void write(final ByteBuffer batch) throws IOException {
+		while (batch.hasRemaining()) channel.write(batch);
+		if (sync == Sync.NEVER) return;
+		final var now = System.nanoTime();
+		if (sync == Sync.INTERVAL && now - synced < flushNanos) return;
+		channel.force(false);
+		synced = now;
+	}
+
+	/**
+	 * Sync Policy.
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public enum Sync {
+
+		/** Leave syncing to the operating system. */
+		NEVER,
+
+		/** Sync after every batch. */
+		BATCH,
+
+		/** Sync at most once per flush interval. */
+		INTERVAL
+	}
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous Text I/O.
+ *
+ * <p>Runs the asynchronous reads and writes of {@link TextFile}s on
+ * {@link AsynchronousFileChannel}s which share a small pool of daemon threads,
+ * one per processor. On Linux the JDK performs the I/O of these channels as
+ * blocking calls on the threads of that pool, so the pool bounds how many
+ * chunks are read or written at once. Callers never wait, and each operation
+ * holds a single chunk between two completions, so thousands of files can be
+ * in flight at once.</p>
+ *
+ * <p>The number of operations in flight is capped; operations started over
+ * the cap are queued without blocking the caller and run as others complete.
+ * Failures are reported the same way the synchronous methods report them:
+ * the message is printed and the future completes with an empty result.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+public final class AsyncIO {
+
+	/** Size of the buffer of each operation. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Threads running the channels and their completions. */
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new java.util.concurrent.ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final var ret = new Thread(r, "aria-async-" + count.incrementAndGet());
+			ret.setDaemon(true);
+			return ret;
+		}
+	});
+
+	/** Operations waiting for a free slot. */
+	private static final ConcurrentLinkedQueue<Runnable> QUEUE = new ConcurrentLinkedQueue<>();
+
+	/** Number of operations in flight. */
+	private static final AtomicInteger PENDING = new AtomicInteger();
+
+	/** Maximum number of operations in flight. */
+	private static volatile int limit = 1024;
+
+	private AsyncIO() {}
+
+	/**
+	 * Returns the maximum number of operations in flight.
+	 *
+	 * @return the cap on outstanding operations
+	 */
+	public static int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Redefine the maximum number of operations in flight.
+	 *
+	 * <p>Operations already in flight are not affected.</p>
+	 *
+	 * @param operations the new cap on outstanding operations, at least 1
+	 */
+	public static void setLimit(final int operations) {
+		limit = Math.max(operations, 1);
+		drain();
+	}
+
+	/**
+	 * Returns the number of operations in flight.
+	 *
+	 * @return the number of outstanding operations
+	 */
+	public static int getPending() {
+		return PENDING.get();
+	}
+
+	/**
+	 * Returns the number of operations waiting for a free slot.
+	 *
+	 * @return the number of queued operations
+	 */
+	public static int getQueued() {
+		return QUEUE.size();
+	}
+
+	/**
+	 * Read chars from a file.
+	 *
+	 * @param file    the file
+	 * @param charset the charset of the file
+	 * @param ofs     offset to start reading
+	 * @param length  maximum number of chars, or {@code 0} to read everything
+	 *
+	 * @return the chars read, or an empty String if the file can't be read
+	 */
+	static CompletableFuture<String> read(final TextFile file, final Charset charset, final long ofs, final int length) {
+		final var ret = new CompletableFuture<String>();
+		submit(() -> new Read(file, charset, ofs, length, ret).start());
+		return ret;
+	}
+
+	/**
+	 * Replace the contents of a file.
+	 *
+	 * @param file    the file
+	 * @param charset the charset of the file
+	 * @param parts   parts of the message
+	 *
+	 * @return whether the operation succeed
+	 */
+	static CompletableFuture<Boolean> write(final TextFile file, final Charset charset, final String... parts) {
+		final var ret = new CompletableFuture<Boolean>();
+		submit(() -> new Write(file, charset, parts, ret).start());
+		return ret;
+	}
+
+	private static void submit(final Runnable op) {
+		QUEUE.add(op);
+		drain();
+	}
+
+	/**
+	 * Start queued operations while there are free slots.
+	 */
+	private static void drain() {
+		while (!QUEUE.isEmpty()) {
+			final var n = PENDING.get();
+			if (n >= limit) return;
+			if (!PENDING.compareAndSet(n, n + 1)) continue;
+			final var op = QUEUE.poll();
+			if (op == null) {
+				PENDING.decrementAndGet();
+				continue;
+			}
+			POOL.execute(op);
+		}
+	}
+
+	/**
+	 * Free the slot of a completed operation.
+	 */
+	private static void done() {
+		PENDING.decrementAndGet();
+		drain();
+	}
+
+	/**
+	 * Asynchronous read, one chunk at a time.
+	 */
+	private static final class Read implements CompletionHandler<Integer, Void> {
+
+		private final TextFile file;
+
+		private final CharsetDecoder decoder;
+
+		private final CompletableFuture<String> result;
+
+		private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+		private final StringBuilder text = new StringBuilder();
+
+		/** Chars left to skip. */
+		private long skip;
+
+		/** Chars left to read, or {@code -1} to read everything. */
+		private long left;
+
+		private AsynchronousFileChannel channel;
+
+		/** Offset of the next byte to read. */
+		private long position;
+
+		Read(final TextFile file, final Charset charset, final long ofs, final int length, final CompletableFuture<String> result) {
+			this.file = file;
+			this.result = result;
+			decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			skip = Math.max(ofs, 0);
+			left = length > 0 ? length : -1;
+		}
+
+		void start() {
+			try {
+				channel = AsynchronousFileChannel.open(file.toPath(), Set.of(StandardOpenOption.READ), POOL);
+				channel.read(bytes, position, null, this);
+			} catch (java.io.IOException | RuntimeException ex) {
+				failed(ex, null);
+			}
+		}
+
+		@Override
+		public void completed(final Integer n, final Void ignored) {
+			try {
+				final var last = n < 0;
+				if (!last) position += n;
+				bytes.flip();
+				while (FastDecoder.decode(decoder, bytes, chars, last).isOverflow()) take();
+				if (last) while (decoder.flush(chars).isOverflow()) take();
+				take();
+				bytes.compact();
+				if (last || left == 0) finish(text.toString());
+				else channel.read(bytes, position, null, this);
+			} catch (RuntimeException ex) {
+				failed(ex, null);
+			}
+		}
+
+		/**
+		 * Keep the decoded chars past the offset, up to the length.
+		 */
+		private void take() {
+			chars.flip();
+			final var skipped = (int) Math.min(skip, chars.remaining());
+			skip -= skipped;
+			chars.position(chars.position() + skipped);
+			final var n = left < 0 ? chars.remaining() : (int) Math.min(left, chars.remaining());
+			text.append(chars, 0, n);
+			if (left > 0) left -= n;
+			chars.clear();
+		}
+
+		@Override
+		public void failed(final Throwable ex, final Void ignored) {
+			System.err.println(ex.getMessage());
+			finish("");
+		}
+
+		private void finish(final String value) {
+			try {
+				if (channel != null) channel.close();
+			} catch (java.io.IOException ex) {
+				System.err.println(ex.getMessage());
+			}
+			done();
+			result.complete(value);
+		}
+	}
+
+	/**
+	 * Asynchronous write, one chunk at a time.
+	 *
+	 * <p>The parts are encoded into a single buffer as it is written, so a
+	 * write holds one chunk of the message, not all of it.</p>
+	 */
+	private static final class Write implements CompletionHandler<Integer, Void> {
+
+		private final TextFile file;
+
+		private final CharsetEncoder encoder;
+
+		private final String[] parts;
+
+		private final CompletableFuture<Boolean> result;
+
+		private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+		/** Chars taken from the parts and not encoded yet. */
+		private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE / 4);
+
+		private AsynchronousFileChannel channel;
+
+		/** Offset of the next byte to write. */
+		private long position;
+
+		/** Index of the part being taken. */
+		private int part;
+
+		/** Offset of the next char of the part being taken. */
+		private int from;
+
+		/** Whether the whole message is encoded. */
+		private boolean encoded;
+
+		Write(final TextFile file, final Charset charset, final String[] parts, final CompletableFuture<Boolean> result) {
+			this.file = file;
+			this.parts = parts;
+			this.result = result;
+			encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+
+		void start() {
+			try {
+				channel = AsynchronousFileChannel.open(file.toPath(), Set.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), POOL);
+				bytes.limit(0);
+				completed(0, null);
+			} catch (java.io.IOException | RuntimeException ex) {
+				failed(ex, null);
+			}
+		}
+
+		@Override
+		public void completed(final Integer n, final Void ignored) {
+			position += n;
+			try {
+				if (!bytes.hasRemaining()) {
+					if (encoded) {
+						finish(true);
+						return;
+					}
+					fill();
+				}
+				channel.write(bytes, position, null, this);
+			} catch (RuntimeException ex) {
+				failed(ex, null);
+			}
+		}
+
+		/**
+		 * Encode the next chunk of the message into the buffer.
+		 */
+		private void fill() {
+			bytes.clear();
+			while (!encoded) {
+				for (; chars.hasRemaining() && part < parts.length; from = 0, part++) {
+					final var n = Math.min(chars.remaining(), parts[part].length() - from);
+					chars.put(parts[part], from, from + n);
+					from += n;
+					if (from < parts[part].length()) break;
+				}
+				chars.flip();
+				final var last = part == parts.length;
+				final var overflow = encoder.encode(chars, bytes, last).isOverflow();
+				chars.compact();
+				if (overflow || last && encoder.flush(bytes).isOverflow()) break;
+				encoded = last;
+			}
+			bytes.flip();
+		}
+
+		@Override
+		public void failed(final Throwable ex, final Void ignored) {
+			System.err.println(ex.getMessage());
+			finish(false);
+		}
+
+		private void finish(final boolean value) {
+			try {
+				if (channel != null) channel.close();
+			} catch (java.io.IOException ex) {
+				System.err.println(ex.getMessage());
+			}
+			TextCache.invalidate(file);
+			done();
+			result.complete(value);
+		}
+	}
+}
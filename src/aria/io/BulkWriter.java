@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk text writer.
+ *
+ * <p>Writes many files with a bounded number of threads, the calling one
+ * included, which take the next file from a shared index until none is
+ * left. Each file is written with a {@link GatherWriter}, so every thread
+ * reuses its own encoders and direct buffers from one file to the next.
+ * Failures are collected instead of printed.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class BulkWriter {
+
+	private BulkWriter() {}
+
+	/**
+	 * Replace the contents of many files.
+	 *
+	 * @param contents the contents of each file, written in its current
+	 *                 encoding
+	 * @param threads  maximum number of files written at once
+	 *
+	 * @return the outcome of the writes
+	 */
+	static TextFile.Batch write(final Map<? extends TextFile, ? extends CharSequence> contents, final int threads) {
+		final var files = new ArrayList<Map.Entry<? extends TextFile, ? extends CharSequence>>(contents.entrySet());
+		final var next = new AtomicInteger();
+		final var written = new AtomicInteger();
+		final var bytes = new LongAdder();
+		// Each slot is set by the thread which took its file, read after the joins.
+		final var errors = new Exception[files.size()];
+		final Runnable worker = () -> {
+			for (int i; (i = next.getAndIncrement()) < files.size();) {
+				final var file = files.get(i).getKey();
+				final var text = files.get(i).getValue();
+				try {
+					bytes.add(write(file, text == null ? "" : text));
+					written.incrementAndGet();
+				} catch (IOException | RuntimeException ex) {
+					errors[i] = ex;
+				}
+			}
+		};
+		final var helpers = new Thread[Math.max(0, Math.min(threads, files.size()) - 1)];
+		for (var k = 0; k < helpers.length; k++) {
+			helpers[k] = new Thread(worker, "aria-bulk-" + (k + 1));
+			helpers[k].setDaemon(true);
+			helpers[k].start();
+		}
+		worker.run();
+		var interrupted = false;
+		for (var helper : helpers) {
+			while (true) {
+				try {
+					helper.join();
+					break;
+				} catch (InterruptedException ex) {
+					// Every file is taken already; wait for the last ones.
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		final var failures = new ArrayList<Map.Entry<TextFile, Exception>>();
+		for (var i = 0; i < errors.length; i++) {
+			if (errors[i] != null) failures.add(new java.util.AbstractMap.SimpleImmutableEntry<>(files.get(i).getKey(), errors[i]));
+		}
+		return new TextFile.Batch(written.get(), bytes.sum(), failures);
+	}
+
+	/**
+	 * Replace the contents of a file.
+	 *
+	 * @return the number of bytes written
+	 */
+	private static long write(final TextFile file, final CharSequence text) throws IOException {
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			final var ret = GatherWriter.write(channel, file.getCharset(), text);
+			TextCache.invalidate(file);
+			return ret;
+		}
+	}
+}
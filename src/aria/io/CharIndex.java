@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Sparse char offset index.
+ *
+ * <p>Maps char offsets to byte offsets every {@code interval} bytes so that a
+ * read at a char offset only decodes from the nearest checkpoint. The index
+ * is kept in a hidden sidecar next to the indexed file and rebuilt when the
+ * length or the modification time of the file changes.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class CharIndex {
+
+	/** Sidecar header, {@code ARIX}. */
+	private static final int MAGIC = 0x41524958;
+
+	/**
+	 * Charsets which can be decoded from any char boundary. UTF-16 is left
+	 * out since its byte order comes from a mark at the start of the file.
+	 */
+	private static final Set<Charset> STATELESS = Set.of(
+		StandardCharsets.US_ASCII, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_8,
+		StandardCharsets.UTF_16BE, StandardCharsets.UTF_16LE);
+
+	/** Length of the indexed file. */
+	private final long length;
+
+	/** Modification time of the indexed file. */
+	private final long modified;
+
+	/** Charset of the indexed file. */
+	private final Charset charset;
+
+	/** Distance between checkpoints, in bytes. */
+	private final int interval;
+
+	/** Char offset of each checkpoint. */
+	private long[] chars;
+
+	/** Byte offset of each checkpoint. */
+	private long[] bytes;
+
+	/** Number of checkpoints. */
+	private int count;
+
+	private CharIndex(final long length, final long modified, final Charset charset, final int interval, final int capacity) {
+		this.length = length;
+		this.modified = modified;
+		this.charset = charset;
+		this.interval = interval;
+		chars = new long[Math.max(capacity, 1)];
+		bytes = new long[chars.length];
+	}
+
+	/**
+	 * Check whether files in the specified charset can be indexed.
+	 *
+	 * @param charset the charset
+	 *
+	 * @return {@code true} if decoding may start at any checkpoint
+	 */
+	static boolean supports(final Charset charset) {
+		return STATELESS.contains(charset);
+	}
+
+	/**
+	 * Returns the sidecar of the specified file.
+	 *
+	 * @param file the indexed file
+	 *
+	 * @return the sidecar file
+	 */
+	static java.io.File sidecar(final java.io.File file) {
+		return new java.io.File(file.getAbsoluteFile().getParentFile(), "." + file.getName() + ".idx");
+	}
+
+	/**
+	 * Returns an up to date index of the specified file.
+	 *
+	 * <p>The sidecar is reused when it still matches the file, otherwise the
+	 * index is rebuilt and the sidecar rewritten.</p>
+	 *
+	 * @param file     the file to index
+	 * @param charset  the charset of the file
+	 * @param interval the distance between checkpoints, in bytes
+	 * @param known    the index already loaded, may be {@code null}
+	 *
+	 * @return the index of the file
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	static CharIndex of(final java.io.File file, final Charset charset, final int interval, final CharIndex known) throws IOException {
+		var length = file.length();
+		var modified = file.lastModified();
+		if (known != null && known.matches(length, modified, charset, interval)) return known;
+		var sidecar = sidecar(file);
+		var loaded = load(sidecar);
+		if (loaded != null && loaded.matches(length, modified, charset, interval)) return loaded;
+		var built = build(file.toPath(), charset, interval, length, modified);
+		try {
+			built.save(sidecar);
+		} catch (IOException ex) {
+			System.err.println(sidecar + " was not saved.");
+		}
+		return built;
+	}
+
+	/**
+	 * Scan a file and record a checkpoint every {@code interval} bytes.
+	 */
+	private static CharIndex build(final java.nio.file.Path path, final Charset charset, final int interval, final long length, final long modified) throws IOException {
+		var index = new CharIndex(length, modified, charset, interval, (int) Math.min(length / interval + 1, Integer.MAX_VALUE - 8));
+		index.add(0, 0);
+		try (var text = new MappedText(path, charset)) {
+			var buf = CharBuffer.allocate(4096);
+			long delivered = 0, next = interval;
+			int n;
+			while ((n = text.read(buf.clear())) > -1) {
+				delivered += n;
+				var at = text.position();
+				if (at < next) continue;
+				index.add(delivered + text.pending(), at);
+				next = at + interval;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Read a sidecar.
+	 *
+	 * @return the stored index, or {@code null} if there is none
+	 */
+	private static CharIndex load(final java.io.File sidecar) {
+		if (!sidecar.isFile()) return null;
+		try (var in = new java.io.DataInputStream(new java.io.BufferedInputStream(new java.io.FileInputStream(sidecar)))) {
+			if (in.readInt() != MAGIC) return null;
+			var length = in.readLong();
+			var modified = in.readLong();
+			var charset = Charset.forName(in.readUTF());
+			var interval = in.readInt();
+			var count = in.readInt();
+			var index = new CharIndex(length, modified, charset, interval, count);
+			for (var i = 0; i < count; i++) index.add(in.readLong(), in.readLong());
+			return index;
+		} catch (IOException | IllegalArgumentException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write this index to a sidecar.
+	 */
+	private void save(final java.io.File sidecar) throws IOException {
+		try (var out = new java.io.DataOutputStream(new java.io.BufferedOutputStream(new java.io.FileOutputStream(sidecar)))) {
+			out.writeInt(MAGIC);
+			out.writeLong(length);
+			out.writeLong(modified);
+			out.writeUTF(charset.name());
+			out.writeInt(interval);
+			out.writeInt(count);
+			for (var i = 0; i < count; i++) {
+				out.writeLong(chars[i]);
+				out.writeLong(bytes[i]);
+			}
+		}
+	}
+
+	private void add(final long charOffset, final long byteOffset) {
+		if (count == chars.length) {
+			chars = Arrays.copyOf(chars, count * 2);
+			bytes = Arrays.copyOf(bytes, count * 2);
+		}
+		chars[count] = charOffset;
+		bytes[count++] = byteOffset;
+	}
+
+	private boolean matches(final long length, final long modified, final Charset charset, final int interval) {
+		return this.length == length && this.modified == modified
+			&& this.charset.equals(charset) && this.interval == interval;
+	}
+
+	/**
+	 * Move a decoder to the last checkpoint at or before a char offset.
+	 *
+	 * @param text the decoder of the indexed file
+	 * @param ofs  the wanted char offset
+	 *
+	 * @return the char offset of the checkpoint
+	 *
+	 * @throws IOException if the file can't be mapped
+	 */
+	long seek(final MappedText text, final long ofs) throws IOException {
+		var at = Arrays.binarySearch(chars, 0, count, ofs);
+		if (at < 0) at = -at - 2;
+		if (at <= 0) return 0;
+		text.seek(bytes[at]);
+		return chars[at];
+	}
+}
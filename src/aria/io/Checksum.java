@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * File checksums.
+ *
+ * <p>CRC32 and CRC32C are computed in parallel over mapped segments of the
+ * file, and the checksums of the segments are combined into the one of the
+ * whole file. Any other algorithm is taken as a {@link MessageDigest} and fed
+ * sequentially through a direct buffer reused by each thread.</p>
+ *
+ * <p>The result is kept in a user extended attribute of the file, along with
+ * the size and the modification time it was computed for, so asking again
+ * for an unchanged file only reads its attributes. File systems without user
+ * attributes just compute it every time.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class Checksum {
+
+	/** Bytes checksummed by a single task. */
+	private static final int CHUNK = 1 << 24;
+
+	/** Reversed CRC32 polynomial. */
+	private static final int CRC32 = 0xEDB88320;
+
+	/** Reversed CRC32C polynomial. */
+	private static final int CRC32C = 0x82F63B78;
+
+	/** Prefix of the names of the cached results. */
+	private static final String ATTRIBUTE = "aria.checksum.";
+
+	/** Buffer of the digests of each thread. */
+	private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1 << 20));
+
+	private Checksum() {}
+
+	/**
+	 * Returns the checksum of a file.
+	 *
+	 * @param path      the path to the file
+	 * @param algorithm {@code CRC32}, {@code CRC32C} or the name of a
+	 *                  {@link MessageDigest} algorithm
+	 *
+	 * @return the checksum, in lower case hexadecimal
+	 *
+	 * @throws IOException              if the file can't be read
+	 * @throws NoSuchAlgorithmException if the algorithm is not available
+	 */
+	static String of(final Path path, final String algorithm) throws IOException, NoSuchAlgorithmException {
+		final var name = algorithm.toUpperCase(Locale.ROOT);
+		final var before = Files.readAttributes(path, BasicFileAttributes.class);
+		final var tag = before.size() + " " + before.lastModifiedTime().to(TimeUnit.NANOSECONDS) + " ";
+		final var view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+		final var attribute = ATTRIBUTE + name.toLowerCase(Locale.ROOT);
+		final var cached = cached(view, attribute);
+		if (cached != null && cached.startsWith(tag)) return cached.substring(tag.length());
+		final String ret;
+		switch (name) {
+			case "CRC32":
+				ret = String.format("%08x", crc(path, CRC32, java.util.zip.CRC32::new));
+				break;
+			case "CRC32C":
+				ret = String.format("%08x", crc(path, CRC32C, java.util.zip.CRC32C::new));
+				break;
+			default:
+				ret = digest(path, MessageDigest.getInstance(algorithm));
+		}
+		final var after = Files.readAttributes(path, BasicFileAttributes.class);
+		// Not cached if the file changed while it was being read.
+		if (after.size() == before.size() && after.lastModifiedTime().equals(before.lastModifiedTime())) cache(view, attribute, tag + ret);
+		return ret;
+	}
+
+	private static String cached(final UserDefinedFileAttributeView view, final String attribute) {
+		if (view == null) return null;
+		try {
+			final var buf = ByteBuffer.allocate(view.size(attribute));
+			view.read(attribute, buf);
+			return new String(buf.array(), 0, buf.position(), StandardCharsets.US_ASCII);
+		} catch (IOException | UnsupportedOperationException | SecurityException ex) {
+			// Not cached yet, or no user attributes.
+			return null;
+		}
+	}
+
+	private static void cache(final UserDefinedFileAttributeView view, final String attribute, final String value) {
+		if (view == null) return;
+		try {
+			view.write(attribute, StandardCharsets.US_ASCII.encode(value));
+		} catch (IOException | UnsupportedOperationException | SecurityException ex) {
+			// Read-only file, or no user attributes: nothing is cached.
+		}
+	}
+
+	/**
+	 * Checksum the segments of a file in parallel and combine them.
+	 */
+	private static long crc(final Path path, final int poly, final java.util.function.Supplier<java.util.zip.Checksum> factory) throws IOException {
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final var size = channel.size();
+			final var chunks = (int) ((size + CHUNK - 1) / CHUNK);
+			final var crcs = IntStream.range(0, chunks).parallel().mapToLong(i -> {
+				final var from = (long) i * CHUNK;
+				final var crc = factory.get();
+				try {
+					crc.update(channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(CHUNK, size - from)));
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+				return crc.getValue();
+			}).toArray();
+			var ret = 0L;
+			for (var i = 0; i < chunks; i++) ret = combine(poly, ret, crcs[i], Math.min(CHUNK, size - (long) i * CHUNK));
+			return ret;
+		}
+	}
+
+	/**
+	 * Returns the CRC of two consecutive byte sequences from their CRCs.
+	 *
+	 * <p>Appending {@code length} zero bytes to the first sequence is a linear
+	 * operator on its CRC, applied by repeated squaring of the operator which
+	 * appends one zero bit, as zlib does.</p>
+	 *
+	 * @param poly   the reversed polynomial
+	 * @param crc1   the CRC of the first sequence
+	 * @param crc2   the CRC of the second sequence
+	 * @param length the length of the second sequence
+	 *
+	 * @return the CRC of both sequences
+	 */
+	static long combine(final int poly, final long crc1, final long crc2, final long length) {
+		if (length <= 0) return crc1;
+		final var even = new int[32];
+		final var odd = new int[32];
+		odd[0] = poly;
+		for (var n = 1; n < 32; n++) odd[n] = 1 << (n - 1);
+		square(even, odd);
+		square(odd, even);
+		var crc = (int) crc1;
+		var len = length;
+		while (true) {
+			square(even, odd);
+			if ((len & 1) != 0) crc = times(even, crc);
+			len >>>= 1;
+			if (len == 0) break;
+			square(odd, even);
+			if ((len & 1) != 0) crc = times(odd, crc);
+			len >>>= 1;
+			if (len == 0) break;
+		}
+		return (crc ^ crc2) & 0xFFFFFFFFL;
+	}
+
+	private static int times(final int[] mat, final int vec) {
+		var sum = 0;
+		var v = vec;
+		for (var i = 0; v != 0; i++, v >>>= 1) if ((v & 1) != 0) sum ^= mat[i];
+		return sum;
+	}
+
+	private static void square(final int[] square, final int[] mat) {
+		for (var n = 0; n < 32; n++) square[n] = times(mat, mat[n]);
+	}
+
+	/**
+	 * Digest a file sequentially.
+	 */
+	private static String digest(final Path path, final MessageDigest md) throws IOException {
+		final var buf = BUFFER.get();
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			while (channel.read(buf.clear()) > 0) md.update(buf.flip());
+		}
+		final var sb = new StringBuilder();
+		for (var b : md.digest()) sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+}
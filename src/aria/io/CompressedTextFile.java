@@ -0,0 +1,586 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block Compressed Text File.
+ *
+ * <p>Text stored as a series of independently deflated blocks, each one a
+ * complete gzip member, as BGZF does. The file is a valid gzip file, so
+ * {@code gunzip} and {@code GZIPInputStream} read it, but reads at a char
+ * offset only inflate the blocks they touch.</p>
+ *
+ * <p>Every block holds up to 16K whole chars. Besides the BGZF block size
+ * its gzip header carries the number of chars in the block, so the block
+ * index is built by walking the headers without inflating anything. Plain
+ * gzip files are read too, decompressing them from the start.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+public class CompressedTextFile extends File implements TextFileInterface {
+
+	private static final long serialVersionUID = -2718417203949812476L;
+
+	/** UTF-8 encoding literal. */
+	private static final String UTF_8 = "UTF-8";
+
+	/** Size of a block header. */
+	private static final int HEADER = 26;
+
+	/** Size of a block trailer. */
+	private static final int TRAILER = 8;
+
+	/** Maximum size of the uncompressed bytes of a block. */
+	private static final int PAYLOAD = 65280;
+
+	/** Maximum number of chars in a block. */
+	private static final int BLOCK_CHARS = 1 << 14;
+
+	/** Number of blocks compressed at once. */
+	private static final int BATCH = 64;
+
+	/** Empty block which ends the file. */
+	private static final byte[] EOF = block(new byte[0], 0, 0, Deflater.DEFAULT_COMPRESSION);
+
+	/** Default encoding. */
+	private String encoding = UTF_8;
+
+	/** Compression level of written blocks. */
+	private int level = Deflater.DEFAULT_COMPRESSION;
+
+	/** The block index last used. */
+	private transient Index index;
+
+	/**
+	 * Initialize a File from a path.
+	 *
+	 * <p>Initialize a File from the specified path</p>
+	 *
+	 * @param path The path to the file
+	 */
+	public CompressedTextFile(final String path) {
+		super(path);
+	}
+
+	/**
+	 * Initialize a File from a path.
+	 *
+	 * <p>Initialize a File from the specified path</p>
+	 *
+	 * @param path The path to the file
+	 */
+	public CompressedTextFile(final java.nio.file.Path path) {
+		super(path);
+	}
+
+	/**
+	 * Initialize a File from a {@code java.io.File}.
+	 *
+	 * <p>This file will contain the same path as the specified file</p>
+	 *
+	 * @param origin The origin file
+	 */
+	public CompressedTextFile(final java.io.File origin) {
+		super(origin);
+	}
+
+	/**
+	 * Initialize a File from a composed path.
+	 *
+	 * <p>Initialize a File from the specified path. The path will be
+	 * created by joining {@code parent} and {@code child} strings by a {@code
+	 * /}.</p>
+	 *
+	 * @param parent The path to the parent file
+	 * @param child  The name of the child file
+	 */
+	public CompressedTextFile(final String parent, final String child) {
+		super(parent, child);
+	}
+
+	/**
+	 * Initialize a File from a composed path.
+	 *
+	 * <p>Initialize a File from the specified path. The path will be
+	 * created by joining {@code parent.toAbsolutePath().toString()} and {@code
+	 * child} strings by a {@code /}.</p>
+	 *
+	 * @param parent The parent file path
+	 * @param child  The name of the file
+	 */
+	public CompressedTextFile(final java.nio.file.Path parent, final String child) {
+		super(parent, child);
+	}
+
+	/**
+	 * Initialize a File from a composed path.
+	 *
+	 * <p>Initialize a File from the specified path. The path will be
+	 * created by joining {@code parent.toAbsolutePath()} and {@code child}
+	 * strings by a {@code /}.</p>
+	 *
+	 * @param parent The parent file
+	 * @param child  The name of the file
+	 */
+	public CompressedTextFile(final java.io.File parent, final String child) {
+		super(parent, child);
+	}
+
+	@Override
+	public String getCurrentEncoding() {
+		return encoding;
+	}
+
+	@Override
+	public String getDefaultEncoding() {
+		return UTF_8;
+	}
+
+	@Override
+	public void setEncoding(final String encoding) {
+		try {
+			this.encoding = encoding != null && Charset.isSupported(encoding) ? encoding : UTF_8;
+		} catch (IllegalArgumentException ex) {
+			this.encoding = UTF_8;
+		}
+	}
+
+	/**
+	 * Returns the compression level of written blocks.
+	 *
+	 * @return the compression level, as {@link Deflater} defines it
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Redefine the compression level of written blocks.
+	 *
+	 * @param level the compression level, from {@code 0} to {@code 9}, or
+	 *              {@code -1} for the default one
+	 */
+	public void setLevel(final int level) {
+		this.level = level < 0 ? Deflater.DEFAULT_COMPRESSION : Math.min(level, 9);
+	}
+
+	@Override
+	public int[] read(final int ofs, final int length, final String enc) {
+		return aria.util.Prima.toInts(reads(ofs, length, enc).toCharArray());
+	}
+
+	@Override
+	public String reads(final int ofs, final int length, final String enc) {
+		try {
+			return readText(ofs, length, Charset.forName(enc));
+		} catch (IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return "";
+		}
+	}
+
+	@Override
+	public int read(final CharBuffer dst, final long srcOfs, final String enc) {
+		if (!dst.hasRemaining()) return 0;
+		try {
+			final var text = readText(srcOfs, dst.remaining(), Charset.forName(enc));
+			if (text.isEmpty()) return -1;
+			dst.put(text);
+			return text.length();
+		} catch (IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * Read chars from this file, inflating only the blocks they are in.
+	 *
+	 * @param ofs     offset to start reading
+	 * @param length  maximum number of chars, or {@code 0} to read everything
+	 * @param charset the charset of this file
+	 *
+	 * @return the chars read
+	 */
+	private String readText(final long ofs, final int length, final Charset charset) throws IOException {
+		final var ret = new StringBuilder();
+		try (var channel = FileChannel.open(toPath(), StandardOpenOption.READ)) {
+			index = Index.of(channel, lastModified(), index);
+			if (index == null) return readStream(ofs, length, charset);
+			final var inflater = new Inflater(true);
+			try {
+				var skip = 0L;
+				var b = index.find(ofs);
+				if (b < index.count) skip = ofs - index.starts[b];
+				for (; b < index.count && (length <= 0 || ret.length() < length); b++) {
+					final var text = new String(inflate(channel, index.offsets[b], index.sizes[b], inflater), charset);
+					final var from = (int) Math.min(skip, text.length());
+					final var to = length <= 0 ? text.length() : (int) Math.min(text.length(), from + (long) length - ret.length());
+					ret.append(text, from, to);
+					skip = 0;
+				}
+			} finally {
+				inflater.end();
+			}
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Read chars from a gzip file which is not made of indexed blocks.
+	 */
+	private String readStream(final long ofs, final int length, final Charset charset) throws IOException {
+		try (
+			var fis = new java.io.FileInputStream(getAbsoluteFile());
+			var gis = new java.util.zip.GZIPInputStream(fis, 1 << 16);
+			var bfr = new java.io.BufferedReader(new java.io.InputStreamReader(gis, charset))
+		) {
+			for (var left = ofs; left > 0; ) {
+				final var n = bfr.skip(left);
+				if (n <= 0) return "";
+				left -= n;
+			}
+			final var ret = new StringBuilder();
+			final var buf = new char[8192];
+			int n;
+			while ((length <= 0 || ret.length() < length) && (n = bfr.read(buf, 0, length <= 0 ? buf.length : Math.min(buf.length, length - ret.length()))) > 0) {
+				ret.append(buf, 0, n);
+			}
+			return ret.toString();
+		}
+	}
+
+	/**
+	 * Read and inflate a block.
+	 *
+	 * @return the uncompressed bytes of the block
+	 */
+	private static byte[] inflate(final FileChannel channel, final long offset, final int size, final Inflater inflater) throws IOException {
+		final var block = ByteBuffer.allocate(size);
+		while (block.hasRemaining()) if (channel.read(block, offset + block.position()) < 0) throw new java.io.EOFException("Truncated block at " + offset);
+		final var bytes = block.array();
+		final var ret = new byte[intAt(bytes, size - 4)];
+		inflater.reset();
+		inflater.setInput(bytes, HEADER, size - HEADER - TRAILER);
+		try {
+			var n = 0;
+			while (n < ret.length && !inflater.finished()) {
+				final var got = inflater.inflate(ret, n, ret.length - n);
+				if (got == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				n += got;
+			}
+			if (n != ret.length) throw new java.util.zip.ZipException("Corrupt block at " + offset);
+		} catch (DataFormatException ex) {
+			throw new java.util.zip.ZipException("Corrupt block at " + offset + ": " + ex.getMessage());
+		}
+		final var crc = new CRC32();
+		crc.update(ret);
+		if ((int) crc.getValue() != intAt(bytes, size - TRAILER)) throw new java.util.zip.ZipException("Bad checksum of block at " + offset);
+		return ret;
+	}
+
+	@Override
+	public boolean write(final String enc, final String... parts) {
+		return write(enc, false, parts);
+	}
+
+	@Override
+	public boolean append(final String enc, final String... parts) {
+		return write(enc, true, parts);
+	}
+
+	@Override
+	public boolean writeAtomic(final String enc, final String... parts) {
+		final var target = toPath();
+		java.nio.file.Path temp = null;
+		try {
+			final var charset = Charset.forName(enc);
+			final var parent = getAbsoluteFile().getParentFile().toPath();
+			temp = java.nio.file.Files.createTempFile(parent, "." + getName() + ".", ".tmp");
+			try (var channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				write(channel, 0, parts, charset);
+				channel.force(true);
+			}
+			java.nio.file.Files.move(temp, target, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+			temp = null;
+			index = null;
+			return true;
+		} catch (IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		} finally {
+			if (temp != null) temp.toFile().delete();
+		}
+	}
+
+	/**
+	 * Write a message on this file.
+	 *
+	 * <p>When appending, the empty block which ends this file is replaced by
+	 * the new blocks.</p>
+	 *
+	 * @param enc    encoding name
+	 * @param append whether to keep the current contents of this file
+	 * @param parts  parts of the message
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	private boolean write(final String enc, final boolean append, final String... parts) {
+		final var mode = append ? StandardOpenOption.READ : StandardOpenOption.TRUNCATE_EXISTING;
+		try (var channel = FileChannel.open(toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+			final var charset = Charset.forName(enc);
+			write(channel, append ? end(channel) : 0, parts, charset);
+			index = null;
+			return true;
+		} catch (IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the offset right after the last block with chars.
+	 */
+	private static long end(final FileChannel channel) throws IOException {
+		final var size = channel.size();
+		if (size < EOF.length) return size;
+		final var tail = ByteBuffer.allocate(EOF.length);
+		while (tail.hasRemaining()) if (channel.read(tail, size - EOF.length + tail.position()) < 0) return size;
+		return java.util.Arrays.equals(tail.array(), EOF) ? size - EOF.length : size;
+	}
+
+	/**
+	 * Compress text into blocks, in parallel, and write them in order.
+	 *
+	 * <p>The parts are cut into blocks as they are read, so at most
+	 * {@value #BATCH} blocks of text are held at once.</p>
+	 *
+	 * @param channel the channel to write to
+	 * @param at      offset of the first block
+	 * @param parts   parts of the text
+	 * @param charset the charset of the text
+	 */
+	private void write(final FileChannel channel, final long at, final String[] parts, final Charset charset) throws IOException {
+		final var encoding = unmarked(charset);
+		final var span = Math.min(BLOCK_CHARS, (int) (PAYLOAD / encoding.newEncoder().maxBytesPerChar()));
+		final var chunks = new java.util.ArrayList<String>(BATCH);
+		final var chunk = new StringBuilder(span);
+		channel.position(at);
+		for (final var part : parts) {
+			for (var from = 0; from < part.length(); ) {
+				final var to = Math.min(part.length(), from + span - chunk.length());
+				chunk.append(part, from, to);
+				from = to;
+				if (chunk.length() < span) continue;
+				final var end = Character.isHighSurrogate(chunk.charAt(span - 1)) ? span - 1 : span;
+				chunks.add(chunk.substring(0, end));
+				chunk.delete(0, end);
+				if (chunks.size() == BATCH) write(channel, chunks, encoding);
+			}
+		}
+		if (chunk.length() > 0) chunks.add(chunk.toString());
+		write(channel, chunks, encoding);
+		final var eof = ByteBuffer.wrap(EOF);
+		while (eof.hasRemaining()) channel.write(eof);
+		channel.truncate(channel.position());
+	}
+
+	/**
+	 * Compress a batch of chunks in parallel, write the blocks in order and
+	 * clear the batch.
+	 */
+	private void write(final FileChannel channel, final java.util.List<String> chunks, final Charset charset) throws IOException {
+		if (chunks.isEmpty()) return;
+		final var blocks = chunks.parallelStream()
+			.map(chunk -> block(chunk, charset, level))
+			.map(ByteBuffer::wrap)
+			.toArray(ByteBuffer[]::new);
+		chunks.clear();
+		while (blocks[blocks.length - 1].hasRemaining()) channel.write(blocks);
+	}
+
+	/**
+	 * Returns the charset which encodes each block, which is the same as
+	 * {@code charset} but never writes a byte order mark, so it is not
+	 * repeated at the start of every block.
+	 */
+	private static Charset unmarked(final Charset charset) {
+		switch (charset.name()) {
+			case "UTF-16":
+				return java.nio.charset.StandardCharsets.UTF_16BE;
+			case "x-UTF-16LE-BOM":
+				return java.nio.charset.StandardCharsets.UTF_16LE;
+			default:
+				return charset;
+		}
+	}
+
+	/**
+	 * Compress a chunk of chars into a block.
+	 *
+	 * <p>The number of chars stored in the header is taken from the encoded
+	 * bytes, so it matches what reads decode even when some chars were
+	 * replaced.</p>
+	 */
+	private static byte[] block(final String chunk, final Charset charset, final int level) {
+		try {
+			final var payload = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE)
+				.encode(CharBuffer.wrap(chunk));
+			final var bytes = new byte[payload.remaining()];
+			payload.get(bytes);
+			return block(bytes, bytes.length, new String(bytes, charset).length(), level);
+		} catch (java.nio.charset.CharacterCodingException ex) {
+			throw new IllegalArgumentException(ex);
+		}
+	}
+
+	/**
+	 * Compress bytes into a gzip member with the BGZF block size and the
+	 * number of chars in its header.
+	 */
+	private static byte[] block(final byte[] payload, final int length, final int chars, final int level) {
+		final var deflater = new Deflater(level, true);
+		var out = new byte[HEADER + length + length / 100 + 64];
+		var n = HEADER;
+		try {
+			deflater.setInput(payload, 0, length);
+			deflater.finish();
+			while (!deflater.finished()) {
+				if (n == out.length) out = java.util.Arrays.copyOf(out, out.length * 2);
+				n += deflater.deflate(out, n, out.length - n);
+			}
+		} finally {
+			deflater.end();
+		}
+		final var crc = new CRC32();
+		crc.update(payload, 0, length);
+		final var ret = java.util.Arrays.copyOf(out, n + TRAILER);
+		final byte[] header = {
+			31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 14, 0,
+			'B', 'C', 2, 0, 0, 0,
+			'A', 'C', 4, 0, 0, 0, 0, 0
+		};
+		System.arraycopy(header, 0, ret, 0, HEADER);
+		ret[16] = (byte) (ret.length - 1);
+		ret[17] = (byte) ((ret.length - 1) >>> 8);
+		putInt(ret, 22, chars);
+		putInt(ret, n, (int) crc.getValue());
+		putInt(ret, n + 4, length);
+		return ret;
+	}
+
+	private static int intAt(final byte[] bytes, final int at) {
+		return (bytes[at] & 0xFF) | (bytes[at + 1] & 0xFF) << 8 | (bytes[at + 2] & 0xFF) << 16 | (bytes[at + 3] & 0xFF) << 24;
+	}
+
+	private static void putInt(final byte[] bytes, final int at, final int value) {
+		for (var i = 0; i < 4; i++) bytes[at + i] = (byte) (value >>> (8 * i));
+	}
+
+	/**
+	 * Offset, size and first char of each block with chars.
+	 */
+	private static final class Index {
+
+		final long length;
+
+		final long modified;
+
+		long[] offsets = new long[64];
+
+		int[] sizes = new int[64];
+
+		long[] starts = new long[64];
+
+		int count;
+
+		long chars;
+
+		private Index(final long length, final long modified) {
+			this.length = length;
+			this.modified = modified;
+		}
+
+		/**
+		 * Returns the block index of a file, walking its block headers.
+		 *
+		 * @param channel  the channel of the file
+		 * @param modified the modification time of the file
+		 * @param known    the index last used, returned if still valid
+		 *
+		 * @return the index, or {@code null} if the file is not made of
+		 *         indexed blocks
+		 */
+		static Index of(final FileChannel channel, final long modified, final Index known) throws IOException {
+			final var length = channel.size();
+			if (known != null && known.length == length && known.modified == modified) return known;
+			final var ret = new Index(length, modified);
+			final var header = ByteBuffer.allocate(HEADER);
+			final var bytes = header.array();
+			for (var at = 0L; at < length; ) {
+				header.clear();
+				while (header.hasRemaining()) if (channel.read(header, at + header.position()) < 0) return null;
+				if (bytes[0] != 31 || bytes[1] != (byte) 139 || bytes[2] != 8 || (bytes[3] & 4) == 0) return null;
+				if (bytes[10] != 14 || bytes[11] != 0 || bytes[12] != 'B' || bytes[13] != 'C' || bytes[18] != 'A' || bytes[19] != 'C') return null;
+				final var size = ((bytes[16] & 0xFF) | (bytes[17] & 0xFF) << 8) + 1;
+				final var chars = intAt(bytes, 22) & 0xFFFFFFFFL;
+				if (chars > 0) ret.add(at, size, chars);
+				at += size;
+			}
+			return ret;
+		}
+
+		private void add(final long offset, final int size, final long chars) {
+			if (count == offsets.length) {
+				offsets = java.util.Arrays.copyOf(offsets, count * 2);
+				sizes = java.util.Arrays.copyOf(sizes, count * 2);
+				starts = java.util.Arrays.copyOf(starts, count * 2);
+			}
+			offsets[count] = offset;
+			sizes[count] = size;
+			starts[count++] = this.chars;
+			this.chars += chars;
+		}
+
+		/**
+		 * Returns the block holding a char offset, or {@link #count} if the
+		 * offset is past the end.
+		 */
+		int find(final long ofs) {
+			if (ofs >= chars) return count;
+			final var at = java.util.Arrays.binarySearch(starts, 0, count, Math.max(ofs, 0));
+			return at >= 0 ? at : -at - 2;
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel line, word and char counter.
+ *
+ * <p>Scans mapped chunks of an ASCII-compatible file without decoding it.
+ * Words are runs of bytes other than ASCII white space; UTF-8 chars are
+ * counted as the bytes which don't continue a sequence, plus one more for
+ * every sequence which decodes to a surrogate pair. Chunk results are merged
+ * so that a word split by a chunk boundary is counted once.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class CountTask extends RecursiveTask<CountTask.Part> {
+
+	private static final long serialVersionUID = -3546925316047217318L;
+
+	/** Chunks of this size or smaller are scanned by a single task. */
+	private static final long CHUNK = 1L << 24;
+
+	/** ASCII white space. */
+	private static final boolean[] SPACE = new boolean[256];
+
+	static {
+		for (var c : " \t\n\u000B\f\r".toCharArray()) SPACE[c] = true;
+	}
+
+	/** The channel of the file. */
+	private final transient FileChannel channel;
+
+	/** Whether the file is encoded in UTF-8. */
+	private final boolean utf8;
+
+	/** First byte of the chunk. */
+	private final long from;
+
+	/** End of the chunk, exclusive. */
+	private final long to;
+
+	/**
+	 * Create a task which counts a byte range.
+	 *
+	 * @param channel the channel of the file
+	 * @param utf8    whether the file is encoded in UTF-8, otherwise every byte
+	 *                is a char
+	 * @param from    the first byte of the range
+	 * @param to      the end of the range, exclusive
+	 */
+	CountTask(final FileChannel channel, final boolean utf8, final long from, final long to) {
+		this.channel = channel;
+		this.utf8 = utf8;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Check whether a byte is ASCII white space.
+	 *
+	 * @param b the byte
+	 *
+	 * @return {@code true} if {@code b} separates words
+	 */
+	static boolean isSpace(final byte b) {
+		return SPACE[b & 0xFF];
+	}
+
+	@Override
+	protected Part compute() {
+		if (to - from <= CHUNK) return scan();
+		var mid = from + (to - from) / 2;
+		var left = new CountTask(channel, utf8, from, mid);
+		left.fork();
+		var right = new CountTask(channel, utf8, mid, to).compute();
+		return left.join().merge(right);
+	}
+
+	private Part scan() {
+		var part = new Part();
+		if (from == to) return part;
+		try {
+			var map = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+			var buf = new byte[1 << 16];
+			var inWord = false;
+			long lines = 0, words = 0, chars = 0;
+			while (map.hasRemaining()) {
+				var n = Math.min(buf.length, map.remaining());
+				map.get(buf, 0, n);
+				for (var i = 0; i < n; i++) {
+					var b = buf[i];
+					if (b == '\n') lines++;
+					if (SPACE[b & 0xFF]) inWord = false;
+					else if (!inWord) {
+						inWord = true;
+						words++;
+					}
+					if (utf8 && (b & 0xC0) == 0x80) continue;
+					chars += utf8 && (b & 0xF8) == 0xF0 ? 2 : 1;
+				}
+			}
+			part.lines = lines;
+			part.words = words;
+			part.chars = chars;
+			part.bytes = to - from;
+			part.head = !isSpace(map.get(0));
+			part.tail = inWord;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return part;
+	}
+
+	/**
+	 * Counts of a byte range.
+	 */
+	static final class Part {
+
+		long lines, words, chars, bytes;
+
+		/** Whether the range starts inside a word. */
+		boolean head;
+
+		/** Whether the range ends inside a word. */
+		boolean tail;
+
+		/**
+		 * Append the counts of the following range.
+		 *
+		 * @param next the counts of the range right after this one
+		 *
+		 * @return this part
+		 */
+		Part merge(final Part next) {
+			if (next.bytes == 0) return this;
+			if (bytes == 0) return next;
+			words += next.words - (tail && next.head ? 1 : 0);
+			lines += next.lines;
+			chars += next.chars;
+			bytes += next.bytes;
+			tail = next.tail;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fast decode paths.
+ *
+ * <p>ASCII and ISO-8859-1 bytes are widened straight to chars. UTF-8 input is
+ * checked 8 bytes at a time and pure ASCII runs are widened as well; only
+ * the bytes around a multi-byte sequence go through the decoder. Any other
+ * charset is left to the decoder. Malformed input is replaced as the pooled
+ * decoders do.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class FastDecoder {
+
+	/** High bit of every byte of a long. */
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	/** Bytes handed to the decoder after a non ASCII byte. */
+	private static final int SLICE = 64;
+
+	private FastDecoder() {}
+
+	/**
+	 * Decode bytes as {@link CharsetDecoder#decode(ByteBuffer, CharBuffer,
+	 * boolean)} does.
+	 *
+	 * @param decoder the decoder of the input charset
+	 * @param in      the input bytes
+	 * @param out     the output chars
+	 * @param last    whether no more input follows
+	 *
+	 * @return {@code UNDERFLOW} if the input was consumed as far as possible,
+	 *         {@code OVERFLOW} if the output is full
+	 */
+	static CoderResult decode(final CharsetDecoder decoder, final ByteBuffer in, final CharBuffer out, final boolean last) {
+		final var charset = decoder.charset();
+		if (StandardCharsets.ISO_8859_1.equals(charset)) return end(decoder, in, out, last, widen(in, out, false));
+		if (StandardCharsets.US_ASCII.equals(charset)) return end(decoder, in, out, last, widen(in, out, true));
+		if (!StandardCharsets.UTF_8.equals(charset)) return decoder.decode(in, out, last);
+		final var limit = in.limit();
+		while (true) {
+			ascii(in, out);
+			if (!in.hasRemaining()) return end(decoder, in, out, last, CoderResult.UNDERFLOW);
+			if (!out.hasRemaining()) return CoderResult.OVERFLOW;
+			final var end = Math.min(limit, in.position() + SLICE);
+			final var whole = end == limit;
+			final var before = in.position();
+			in.limit(end);
+			final CoderResult cr;
+			try {
+				cr = decoder.decode(in, out, last && whole);
+			} finally {
+				in.limit(limit);
+			}
+			if (cr.isOverflow()) return cr;
+			// A sequence cut by the end of the input waits for more bytes.
+			if (whole || in.position() == before) return CoderResult.UNDERFLOW;
+		}
+	}
+
+	/**
+	 * Let the decoder know the input ended, so it can be flushed.
+	 */
+	private static CoderResult end(final CharsetDecoder decoder, final ByteBuffer in, final CharBuffer out, final boolean last, final CoderResult cr) {
+		return last && cr.isUnderflow() ? decoder.decode(in, out, true) : cr;
+	}
+
+	/**
+	 * Widen single bytes to chars.
+	 *
+	 * @param ascii whether bytes above {@code 0x7F} are malformed
+	 */
+	private static CoderResult widen(final ByteBuffer in, final CharBuffer out, final boolean ascii) {
+		final var n = Math.min(in.remaining(), out.remaining());
+		final var src = in.position();
+		final var dst = out.position();
+		if (out.hasArray()) {
+			final var arr = out.array();
+			final var ofs = out.arrayOffset() + dst;
+			for (var i = 0; i < n; i++) {
+				final var b = in.get(src + i);
+				arr[ofs + i] = ascii && b < 0 ? '\uFFFD' : (char) (b & 0xFF);
+			}
+		} else {
+			for (var i = 0; i < n; i++) {
+				final var b = in.get(src + i);
+				out.put(dst + i, ascii && b < 0 ? '\uFFFD' : (char) (b & 0xFF));
+			}
+		}
+		in.position(src + n);
+		out.position(dst + n);
+		return in.hasRemaining() ? CoderResult.OVERFLOW : CoderResult.UNDERFLOW;
+	}
+
+	/**
+	 * Widen the leading run of ASCII bytes, 8 bytes at a time.
+	 */
+	private static void ascii(final ByteBuffer in, final CharBuffer out) {
+		final var n = Math.min(in.remaining(), out.remaining());
+		final var src = in.position();
+		final var dst = out.position();
+		final var arr = out.hasArray() ? out.array() : null;
+		final var ofs = arr == null ? 0 : out.arrayOffset() + dst;
+		var i = 0;
+		if (arr != null) {
+			final var shift = in.order() == java.nio.ByteOrder.BIG_ENDIAN ? 56 : 0;
+			final var step = shift == 0 ? 8 : -8;
+			for (; i + 8 <= n; i += 8) {
+				final var v = in.getLong(src + i);
+				if ((v & HIGH_BITS) != 0) break;
+				for (int k = 0, at = shift; k < 8; k++, at += step) arr[ofs + i + k] = (char) ((v >>> at) & 0x7F);
+			}
+		}
+		for (; i < n; i++) {
+			final var b = in.get(src + i);
+			if (b < 0) break;
+			if (arr != null) arr[ofs + i] = (char) b;
+			else out.put(dst + i, (char) b);
+		}
+		in.position(src + i);
+		out.position(dst + i);
+	}
+}
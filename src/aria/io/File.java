@@ -121,6 +121,30 @@ public class File extends java.io.File implements FileInterface {
 		return false;
 	}
 
+	/**
+	 * Compute the checksum of this file.
+	 *
+	 * <p>{@code CRC32} and {@code CRC32C} are computed in parallel over
+	 * mapped segments of this file; any other algorithm is taken as a
+	 * {@link java.security.MessageDigest} name, such as {@code SHA-256}. The
+	 * result is kept in a user extended attribute of this file, tagged with
+	 * its size and modification time, so asking again for an unchanged file
+	 * costs a single metadata read.</p>
+	 *
+	 * @param algorithm the name of the algorithm
+	 *
+	 * @return the checksum in lower case hexadecimal, or an empty String if
+	 *         this file can't be read
+	 */
+	public String checksum(final String algorithm) {
+		try {
+			return Checksum.of(toPath(), algorithm);
+		} catch (java.io.IOException | java.io.UncheckedIOException | java.security.NoSuchAlgorithmException ex) {
+			System.err.println(ex.getMessage());
+			return "";
+		}
+	}
+
 	@Override
 	public boolean moveTo(final java.io.File folder) throws java.io.IOException {
 		if (!folder.exists()) throw new java.io.FileNotFoundException(folder + " does not exist.");
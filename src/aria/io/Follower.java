@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * File Follower.
+ *
+ * <p>Polls a growing file and hands the text appended since the last poll
+ * to a consumer, like {@code tail -F}. Only new bytes are read and decoded;
+ * a char split between two polls is completed by the next one. When the file
+ * shrinks it is read again from the start, and when it is replaced, detected
+ * by a change of its file key (the inode on UNIX), the rest of the old file
+ * is read before switching to the new one.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+public final class Follower implements java.io.Closeable {
+
+	/** The path to the followed file. */
+	private final Path path;
+
+	/** Receives the appended text. */
+	private final Consumer<? super CharSequence> sink;
+
+	/** Time between polls. */
+	private final long periodNanos;
+
+	/** The decoder of the file, kept between polls. */
+	private final CharsetDecoder decoder;
+
+	/** Bytes read but not decoded yet. */
+	private final ByteBuffer bytes = ByteBuffer.allocate(8192);
+
+	/** Chars decoded but not handed out yet. */
+	private final CharBuffer chars = CharBuffer.allocate(8192);
+
+	/** The thread polling the file. */
+	private final Thread poller;
+
+	/** The open file. */
+	private FileChannel channel;
+
+	/** The key of the open file. */
+	private Object key;
+
+	/** Offset of the next byte to read. */
+	private volatile long position;
+
+	/** Whether this follower was closed. */
+	private volatile boolean closed;
+
+	/**
+	 * Start following a file from its current end.
+	 *
+	 * @param path        the path to the file
+	 * @param charset     the charset of the file
+	 * @param periodMillis time between polls
+	 * @param sink        receives the appended text; the sequence is only
+	 *                    valid until it returns
+	 */
+	Follower(final Path path, final Charset charset, final long periodMillis, final Consumer<? super CharSequence> sink) {
+		this.path = path;
+		this.sink = sink;
+		this.periodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(periodMillis, 1));
+		decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		try {
+			open();
+			position = channel.size();
+		} catch (IOException ex) {
+			// Not there yet, followed from the start once it shows up.
+		}
+		poller = new Thread(this::run, "aria-follower-" + path.getFileName());
+		poller.setDaemon(true);
+		poller.start();
+	}
+
+	private void run() {
+		while (!closed) {
+			try {
+				poll();
+			} catch (IOException | RuntimeException ex) {
+				System.err.println(ex.getMessage());
+			}
+			LockSupport.parkNanos(this, periodNanos);
+		}
+		try {
+			if (channel != null) channel.close();
+		} catch (IOException ex) {
+			System.err.println(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Hand out the text appended since the last poll.
+	 */
+	private void poll() throws IOException {
+		final BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException ex) {
+			return;
+		}
+		if (channel == null) {
+			open();
+		} else if (attrs.fileKey() != null && !attrs.fileKey().equals(key)) {
+			drain();
+			channel.close();
+			open();
+		} else if (attrs.size() < position) {
+			restart();
+		}
+		drain();
+	}
+
+	private void open() throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+		restart();
+	}
+
+	private void restart() {
+		position = 0;
+		bytes.clear();
+		decoder.reset();
+	}
+
+	/**
+	 * Decode the bytes of the open file past {@link #position}.
+	 */
+	private void drain() throws IOException {
+		int n;
+		while (!closed && (n = channel.read(bytes, position)) > 0) {
+			position += n;
+			bytes.flip();
+			while (decoder.decode(bytes, chars, false).isOverflow()) deliver();
+			bytes.compact();
+			deliver();
+		}
+	}
+
+	private void deliver() {
+		chars.flip();
+		if (chars.hasRemaining()) sink.accept(chars);
+		chars.clear();
+	}
+
+	/**
+	 * Returns the offset of the next byte to be read.
+	 *
+	 * @return the current byte offset in the followed file
+	 */
+	public long position() {
+		return position;
+	}
+
+	/**
+	 * Stop following the file.
+	 *
+	 * <p>Waits for the poll in progress, if any, to finish.</p>
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(poller);
+		if (Thread.currentThread() == poller) return;
+		try {
+			poller.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gathering text writer.
+ *
+ * <p>Encodes text straight into a small set of direct buffers owned by the
+ * calling thread and hands them to the channel with one gathering write each
+ * time they are all full, so the memory used by a write does not depend on
+ * the size of the text.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class GatherWriter {
+
+	/** Number of buffers of each thread. */
+	private static final int BUFFERS = 8;
+
+	/** Size of each buffer. */
+	private static final int BUFFER_SIZE = 1 << 14;
+
+	/** Buffers of each thread. */
+	private static final ThreadLocal<ByteBuffer[]> POOL = ThreadLocal.withInitial(() -> {
+		var ret = new ByteBuffer[BUFFERS];
+		for (var i = 0; i < BUFFERS; i++) ret[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		return ret;
+	});
+
+	/** Encoders of each thread, by charset. */
+	private static final ThreadLocal<Map<Charset, CharsetEncoder>> ENCODERS = ThreadLocal.withInitial(HashMap::new);
+
+	/** Buffers in use. */
+	private final ByteBuffer[] buffers = POOL.get();
+
+	/** The channel to write to. */
+	private final GatheringByteChannel channel;
+
+	/** The encoder in use. */
+	private final CharsetEncoder encoder;
+
+	/** Holds a high surrogate which ended the previous part. */
+	private final CharBuffer pair = CharBuffer.allocate(2);
+
+	/** Index of the buffer being filled. */
+	private int current;
+
+	private GatherWriter(final GatheringByteChannel channel, final Charset charset) {
+		this.channel = channel;
+		encoder = ENCODERS.get().computeIfAbsent(charset, cs -> cs.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE)).reset();
+		for (var v : buffers) v.clear();
+		pair.limit(0);
+	}
+
+	/**
+	 * Encode text and write it to a channel.
+	 *
+	 * @param channel the channel to write to
+	 * @param charset the charset of the text
+	 * @param parts   parts of the text, written one after the other
+	 *
+	 * @return the number of bytes written
+	 *
+	 * @throws IOException if the channel can't be written
+	 */
+	static long write(final GatheringByteChannel channel, final Charset charset, final CharSequence... parts) throws IOException {
+		return new GatherWriter(channel, charset).write(parts);
+	}
+
+	private long write(final CharSequence... parts) throws IOException {
+		var total = 0L;
+		for (var part : parts) {
+			if (part.length() == 0) continue;
+			var from = 0;
+			if (pair.hasRemaining()) {
+				pair.limit(2).put(1, part.charAt(0));
+				total += encode(pair, false);
+				if (!pair.hasRemaining()) from = 1;
+			}
+			var in = CharBuffer.wrap(part, from, part.length());
+			total += encode(in, false);
+			pair.clear();
+			if (in.hasRemaining()) pair.put(in.get());
+			pair.flip();
+		}
+		total += encode(pair, true);
+		while (encoder.flush(buffers[current]).isOverflow()) total += next();
+		return total + drain(current + 1);
+	}
+
+	/**
+	 * Encode chars, moving to the next buffer whenever one is full.
+	 *
+	 * @return the number of bytes written meanwhile
+	 */
+	private long encode(final CharBuffer in, final boolean last) throws IOException {
+		var total = 0L;
+		while (encoder.encode(in, buffers[current], last).isOverflow()) total += next();
+		return total;
+	}
+
+	/**
+	 * Move to the next buffer, writing them all if none is left.
+	 *
+	 * @return the number of bytes written
+	 */
+	private long next() throws IOException {
+		if (++current < BUFFERS) return 0;
+		var total = drain(BUFFERS);
+		current = 0;
+		return total;
+	}
+
+	/**
+	 * Write the first {@code n} buffers with gathering writes.
+	 *
+	 * @return the number of bytes written
+	 */
+	private long drain(final int n) throws IOException {
+		var size = 0L;
+		for (var i = 0; i < n; i++) size += buffers[i].flip().remaining();
+		var total = 0L;
+		while (total < size) total += channel.write(buffers, 0, n);
+		for (var i = 0; i < n; i++) buffers[i].clear();
+		return total;
+	}
+}
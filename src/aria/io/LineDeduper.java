@@ -0,0 +1,529 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Distinct line extractor.
+ *
+ * <p>Keeps the first occurrence of every line of a file, in the order they
+ * appear. The file is mapped and every line is hashed to 64 bits; a table
+ * with open addressing holds the hash and the offset of each distinct line,
+ * sixteen bytes per line and no String at all. A hash already in the table
+ * is compared byte by byte with the line it came from, so lines which only
+ * share their hash are both kept.</p>
+ *
+ * <p>When the table would outgrow the memory budget, the hashes and offsets
+ * of the lines are spilled under {@link aria.Local#TEMP} in partitions, by
+ * the high bits of their hashes, so that equal lines fall in the same one.
+ * Each partition is then deduplicated on its own, and the offsets kept in
+ * each one are merged back in file order.</p>
+ *
+ * <p>Lines end with {@code \n}, and a {@code \r} before it is not part of the
+ * line. Files in charsets which are not ASCII-compatible are transcoded to
+ * UTF-8 first.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class LineDeduper {
+
+	/** Memory taken by each slot of the table. */
+	private static final int SLOT = 16;
+
+	/** Smallest table. */
+	private static final int MIN_CAPACITY = 1 << 10;
+
+	/** Largest table. */
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	/** Bytes in each mapped segment of the file, a power of two. */
+	private static final int SEGMENT = 1 << 30;
+
+	/** Size of the stream buffers of the spill files. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Bits of the hashes which pick a partition, at most. */
+	private static final int PARTITION_BITS = 12;
+
+	/** Line feed in every byte. */
+	private static final long LF = 0x0A0A0A0A0A0A0A0AL;
+
+	/** All but the high bit of every byte. */
+	private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+	/** Maximum memory taken by the table. */
+	private final long budget;
+
+	/** Spill files. */
+	private final List<Path> spills = new ArrayList<>();
+
+	/**
+	 * Create an extractor.
+	 *
+	 * @param budget the memory budget, in bytes
+	 */
+	LineDeduper(final long budget) {
+		this.budget = Math.max(budget, (long) SLOT * MIN_CAPACITY);
+	}
+
+	/**
+	 * Write the distinct lines of a file into another file.
+	 *
+	 * <p>The output is written aside and moved over {@code out} at the end, so
+	 * both may be the same file.</p>
+	 *
+	 * @param in      the file to read, in its current encoding
+	 * @param out     the file to write
+	 * @param charset the charset of {@code out}
+	 *
+	 * @throws IOException if the files or the spills can't be read or written
+	 */
+	void distinct(final TextFile in, final Path out, final Charset charset) throws IOException {
+		Path temp = null;
+		try {
+			var source = in.toPath();
+			var sourceCharset = in.getCharset();
+			if (!LineSpliterator.supports(sourceCharset)) {
+				source = spill(".txt");
+				try (var w = Files.newBufferedWriter(source, StandardCharsets.UTF_8); var lines = in.lines(in.getCurrentEncoding())) {
+					for (var it = lines.iterator(); it.hasNext();) {
+						w.write(it.next());
+						w.write('\n');
+					}
+				}
+				sourceCharset = StandardCharsets.UTF_8;
+			}
+			final var target = out.toAbsolutePath();
+			temp = Files.createTempFile(target.getParent(), "." + target.getFileName() + ".", ".tmp");
+			try (var channel = FileChannel.open(source, StandardOpenOption.READ)) {
+				final var text = new Source(channel);
+				try (var os = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE)) {
+					final var emit = new Emitter(text, sourceCharset, charset, os);
+					final var estimate = inMemory(text, emit);
+					if (estimate >= 0) partitioned(text, estimate, emit);
+				}
+			}
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			if (temp != null) Files.deleteIfExists(temp);
+			for (var v : spills) Files.deleteIfExists(v);
+		}
+	}
+
+	/**
+	 * Deduplicate the whole file in memory.
+	 *
+	 * @return {@code -1} if the lines were written, or the estimated number
+	 *         of distinct lines if the table would outgrow the budget, in
+	 *         which case nothing was written
+	 */
+	private long inMemory(final Source text, final Emitter emit) throws IOException {
+		final var table = new Table(MIN_CAPACITY);
+		final var length = text.length;
+		for (var pos = 0L; pos < length;) {
+			final var lf = text.next(pos);
+			if (table.add(text.hash(pos, text.end(pos, lf)), pos, text) && table.full() && !table.grow(budget)) {
+				return (long) (table.size * ((double) length / (lf + 1)));
+			}
+			pos = lf + 1;
+		}
+		final var kept = table.offsets();
+		Arrays.parallelSort(kept);
+		for (var v : kept) emit.line(v);
+		return -1;
+	}
+
+	/**
+	 * Deduplicate the file through partitions spilled to disk.
+	 *
+	 * @param estimate the estimated number of distinct lines
+	 */
+	private void partitioned(final Source text, final long estimate, final Emitter emit) throws IOException {
+		// Each partition should fit a table at half load within the budget.
+		final var perPartition = Math.max(budget / SLOT / 2, 1);
+		var bits = 1;
+		while (bits < PARTITION_BITS && (estimate >> bits) > perPartition) bits++;
+		final var partitions = 1 << bits;
+		final var shift = 64 - bits;
+		final var paths = new Path[partitions];
+		final var outs = new DataOutputStream[partitions];
+		try {
+			for (var i = 0; i < partitions; i++) {
+				paths[i] = spill(".part");
+				outs[i] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(paths[i]), BUFFER_SIZE / 8));
+			}
+			for (var pos = 0L; pos < text.length;) {
+				final var lf = text.next(pos);
+				final var h = text.hash(pos, text.end(pos, lf));
+				final var part = outs[(int) (h >>> shift)];
+				part.writeLong(h);
+				part.writeLong(pos);
+				pos = lf + 1;
+			}
+		} finally {
+			for (var v : outs) if (v != null) v.close();
+		}
+		final var kept = new Path[partitions];
+		for (var i = 0; i < partitions; i++) {
+			final var entries = Files.size(paths[i]) / SLOT;
+			final var table = new Table(Table.capacity(Math.min(entries, perPartition)));
+			kept[i] = spill(".keep");
+			try (var is = new DataInputStream(new BufferedInputStream(Files.newInputStream(paths[i]), BUFFER_SIZE));
+				var os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(kept[i]), BUFFER_SIZE))) {
+				for (var n = 0L; n < entries; n++) {
+					final var h = is.readLong();
+					final var pos = is.readLong();
+					if (!table.add(h, pos, text)) continue;
+					os.writeLong(pos);
+					// A skewed partition may take more than its share.
+					if (table.full()) table.grow(Long.MAX_VALUE);
+				}
+			}
+			Files.delete(paths[i]);
+		}
+		merge(kept, emit);
+	}
+
+	/**
+	 * Emit the kept lines of every partition in file order.
+	 */
+	private static void merge(final Path[] kept, final Emitter emit) throws IOException {
+		final var heap = new PriorityQueue<Offsets>(kept.length, (a, b) -> Long.compare(a.head, b.head));
+		try {
+			for (var v : kept) {
+				final var offsets = new Offsets(v);
+				if (offsets.next()) heap.add(offsets);
+				else offsets.in.close();
+			}
+			while (!heap.isEmpty()) {
+				final var offsets = heap.poll();
+				emit.line(offsets.head);
+				if (offsets.next()) heap.add(offsets);
+				else offsets.in.close();
+			}
+		} finally {
+			for (var v : heap) v.in.close();
+		}
+	}
+
+	private Path spill(final String suffix) throws IOException {
+		final var ret = Files.createTempFile(Path.of(aria.Local.TEMP), "aria-distinct-", suffix);
+		spills.add(ret);
+		return ret;
+	}
+
+	/**
+	 * A file mapped in segments.
+	 */
+	private static final class Source {
+
+		/** Length of the file. */
+		final long length;
+
+		private final MappedByteBuffer[] segments;
+
+		Source(final FileChannel channel) throws IOException {
+			length = channel.size();
+			segments = new MappedByteBuffer[(int) ((length + SEGMENT - 1) / SEGMENT)];
+			for (var i = 0; i < segments.length; i++) {
+				final var from = (long) i * SEGMENT;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(SEGMENT, length - from));
+			}
+		}
+
+		byte get(final long pos) {
+			return segments[(int) (pos / SEGMENT)].get((int) (pos & (SEGMENT - 1)));
+		}
+
+		/**
+		 * Returns the offset of the line feed which ends a line.
+		 *
+		 * @return the offset of the {@code \n}, or the length of the file
+		 */
+		long next(final long pos) {
+			var at = pos;
+			while (at < length) {
+				final var seg = segments[(int) (at / SEGMENT)];
+				final var base = at & ~(long) (SEGMENT - 1);
+				final var lim = seg.limit();
+				var i = (int) (at - base);
+				// Eight bytes at a time: the high bit of each line feed is set.
+				for (; i + 8 <= lim; i += 8) {
+					final var t = seg.getLong(i) ^ LF;
+					final var z = ~(((t & LOW7) + LOW7) | t | LOW7);
+					if (z != 0) return base + i + (Long.numberOfLeadingZeros(z) >>> 3);
+				}
+				for (; i < lim; i++) if (seg.get(i) == '\n') return base + i;
+				at = base + lim;
+			}
+			return length;
+		}
+
+		/**
+		 * Returns the end of a line without its {@code \r}.
+		 */
+		long end(final long pos, final long lf) {
+			return lf > pos && get(lf - 1) == '\r' ? lf - 1 : lf;
+		}
+
+		/**
+		 * Compare two lines.
+		 */
+		boolean equal(final long a, final long b) {
+			if (a == b) return true;
+			final var endA = end(a, next(a));
+			final var endB = end(b, next(b));
+			if (endA - a != endB - b) return false;
+			for (var i = 0L; i < endA - a; i++) if (get(a + i) != get(b + i)) return false;
+			return true;
+		}
+
+		/**
+		 * Returns the hash of the bytes of a range.
+		 */
+		long hash(final long from, final long to) {
+			var h = 0x9E3779B97F4A7C15L ^ (to - from);
+			final var seg = (int) (from / SEGMENT);
+			if (to <= (long) (seg + 1) * SEGMENT) {
+				final var buf = segments[seg];
+				var i = (int) (from & (SEGMENT - 1));
+				final var e = (int) (to - (long) seg * SEGMENT);
+				for (; i + 8 <= e; i += 8) h = mix(h, buf.getLong(i));
+				if (i < e) {
+					var w = 0L;
+					for (; i < e; i++) w = w << 8 | (buf.get(i) & 0xFF);
+					h = mix(h, w);
+				}
+			} else {
+				var w = 0L;
+				var n = 0;
+				for (var p = from; p < to; p++) {
+					w = w << 8 | (get(p) & 0xFF);
+					if (++n == 8) {
+						h = mix(h, w);
+						w = 0;
+						n = 0;
+					}
+				}
+				if (n > 0) h = mix(h, w);
+			}
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			h *= 0xC4CEB9FE1A85EC53L;
+			return h ^ h >>> 33;
+		}
+
+		private static long mix(final long h, final long w) {
+			return Long.rotateLeft((h ^ w) * 0x87C37B91114253D5L, 31) * 0x4CF5AD432745937FL;
+		}
+
+		/**
+		 * Write the bytes of a range.
+		 */
+		void copy(final long from, final long to, final OutputStream os, final byte[] buf) throws IOException {
+			for (var p = from; p < to;) {
+				final var seg = segments[(int) (p / SEGMENT)];
+				final var i = (int) (p & (SEGMENT - 1));
+				final var n = (int) Math.min(Math.min(to - p, seg.limit() - i), buf.length);
+				seg.get(i, buf, 0, n);
+				os.write(buf, 0, n);
+				p += n;
+			}
+		}
+	}
+
+	/**
+	 * Hashes and offsets of distinct lines, with open addressing.
+	 */
+	private static final class Table {
+
+		/** Hashes, {@code 0} in free slots. */
+		private long[] hashes;
+
+		/** Offset of the line of each hash. */
+		private long[] offsets;
+
+		/** Number of lines in the table. */
+		int size;
+
+		Table(final int capacity) {
+			hashes = new long[capacity];
+			offsets = new long[capacity];
+		}
+
+		/**
+		 * Returns the capacity which holds some lines at the usual load.
+		 */
+		static int capacity(final long lines) {
+			var ret = MIN_CAPACITY;
+			while (ret < MAX_CAPACITY && ret / 2 < lines) ret <<= 1;
+			return ret;
+		}
+
+		/**
+		 * Add a line, unless an equal line is in the table.
+		 *
+		 * @return {@code true} if the line was added
+		 */
+		boolean add(final long hash, final long pos, final Source text) {
+			final var h = hash == 0 ? 1 : hash;
+			final var mask = hashes.length - 1;
+			for (var i = (int) h & mask;; i = (i + 1) & mask) {
+				final var v = hashes[i];
+				if (v == 0) {
+					hashes[i] = h;
+					offsets[i] = pos;
+					size++;
+					return true;
+				}
+				if (v == h && text.equal(offsets[i], pos)) return false;
+			}
+		}
+
+		/**
+		 * Returns whether the table is over its load factor.
+		 */
+		boolean full() {
+			return size > hashes.length / 2;
+		}
+
+		/**
+		 * Double the capacity.
+		 *
+		 * @return {@code false} if the table would outgrow the budget
+		 */
+		boolean grow(final long budget) {
+			final var capacity = hashes.length * 2;
+			if (capacity > MAX_CAPACITY || (long) capacity * SLOT > budget) return false;
+			final var oldHashes = hashes;
+			final var oldOffsets = offsets;
+			hashes = new long[capacity];
+			offsets = new long[capacity];
+			final var mask = capacity - 1;
+			for (var k = 0; k < oldHashes.length; k++) {
+				final var h = oldHashes[k];
+				if (h == 0) continue;
+				var i = (int) h & mask;
+				while (hashes[i] != 0) i = (i + 1) & mask;
+				hashes[i] = h;
+				offsets[i] = oldOffsets[k];
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the offsets of the lines in the table.
+		 */
+		long[] offsets() {
+			final var ret = new long[size];
+			var n = 0;
+			for (var i = 0; i < hashes.length; i++) if (hashes[i] != 0) ret[n++] = offsets[i];
+			return ret;
+		}
+	}
+
+	/**
+	 * Writer of the kept lines, each one followed by a line feed.
+	 */
+	private static final class Emitter {
+
+		private final Source text;
+
+		/** Whether the bytes of the lines are written as they are. */
+		private final boolean raw;
+
+		private final Charset from;
+
+		private final Charset to;
+
+		private final OutputStream os;
+
+		/** Line feed in the output charset. */
+		private final byte[] lf;
+
+		private byte[] buf = new byte[BUFFER_SIZE];
+
+		Emitter(final Source text, final Charset from, final Charset to, final OutputStream os) {
+			this.text = text;
+			this.from = from;
+			this.to = to;
+			this.os = os;
+			raw = from.equals(to);
+			lf = "\n".getBytes(to);
+		}
+
+		void line(final long pos) throws IOException {
+			final var end = text.end(pos, text.next(pos));
+			if (raw) {
+				text.copy(pos, end, os, buf);
+			} else {
+				final var n = (int) (end - pos);
+				if (buf.length < n) buf = new byte[n];
+				for (var i = 0; i < n; i++) buf[i] = text.get(pos + i);
+				os.write(new String(buf, 0, n, from).getBytes(to));
+			}
+			os.write(lf);
+		}
+	}
+
+	/**
+	 * Reader of the offsets kept in a partition.
+	 */
+	private static final class Offsets {
+
+		final DataInputStream in;
+
+		/** The next offset. */
+		long head;
+
+		Offsets(final Path path) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE / 8));
+		}
+
+		boolean next() throws IOException {
+			try {
+				head = in.readLong();
+				return true;
+			} catch (EOFException ex) {
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Line diff.
+ *
+ * <p>Both files are mapped and their common start and end are skipped by
+ * comparing bytes, eight at a time, and backing off to the nearest line
+ * start. Each line left in between gets an id, so that equal lines, and only
+ * equal lines, share it: lines are hashed to 64 bits and lines with the same
+ * hash are compared byte by byte. The ids are then diffed with the linear
+ * space variant of Myers' algorithm, which bisects the edit script at the
+ * middle snake of the forward and backward searches.</p>
+ *
+ * <p>Lines end with {@code \n}, and a {@code \r} before it is not part of the
+ * line. Only the lines of each hunk are decoded into Strings.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class LineDiff {
+
+	/** The original file. */
+	private final MappedByteBuffer a;
+
+	/** The changed file. */
+	private final MappedByteBuffer b;
+
+	/** The charset of the lines. */
+	private final Charset charset;
+
+	/** Start of each line between the common start and end. */
+	private long[] startsA, startsB;
+
+	/** Id of each line between the common start and end. */
+	private int[] idsA, idsB;
+
+	/** Whether each line of the first file was removed. */
+	private boolean[] removed;
+
+	/** Whether each line of the second file was added. */
+	private boolean[] added;
+
+	private LineDiff(final MappedByteBuffer a, final MappedByteBuffer b, final Charset charset) {
+		this.a = a;
+		this.b = b;
+		this.charset = charset;
+	}
+
+	/**
+	 * Diff two files.
+	 *
+	 * @param from    the original file
+	 * @param to      the changed file
+	 * @param charset the charset of both files, ASCII-compatible
+	 * @param action  called with each hunk, in order
+	 *
+	 * @throws IOException if the files can't be read, or one is larger than
+	 *                     2 GB
+	 */
+	static void diff(final Path from, final Path to, final Charset charset, final Consumer<? super TextFile.Hunk> action) throws IOException {
+		if (!LineSpliterator.supports(charset)) throw new IllegalArgumentException("Can't diff " + charset + " files.");
+		try (var ca = FileChannel.open(from, StandardOpenOption.READ); var cb = FileChannel.open(to, StandardOpenOption.READ)) {
+			new LineDiff(map(ca), map(cb), charset).run(action);
+		}
+	}
+
+	private static MappedByteBuffer map(final FileChannel channel) throws IOException {
+		final var size = channel.size();
+		if (size > Integer.MAX_VALUE) throw new IOException("Can't diff files larger than 2 GB.");
+		return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+
+	private void run(final Consumer<? super TextFile.Hunk> action) {
+		final var n = a.limit();
+		final var m = b.limit();
+		// Common start, cut at the last line start.
+		var p = 0;
+		final var min = Math.min(n, m);
+		while (p + 8 <= min && a.getLong(p) == b.getLong(p)) p += 8;
+		while (p < min && a.get(p) == b.get(p)) p++;
+		if (p == n && n == m) return;
+		var head = p;
+		while (head > 0 && a.get(head - 1) != '\n') head--;
+		// Common end, cut at the first line start of both files.
+		var q = 0;
+		while (q + 8 <= min - head && a.getLong(n - q - 8) == b.getLong(m - q - 8)) q += 8;
+		while (q < min - head && a.get(n - q - 1) == b.get(m - q - 1)) q++;
+		var tail = q;
+		while (tail > 0 && !(isStart(a, n - tail) && isStart(b, m - tail))) tail--;
+		var line = 0L;
+		for (var i = 0; i < head; i++) if (a.get(i) == '\n') line++;
+		startsA = starts(a, head, n - tail);
+		startsB = starts(b, head, m - tail);
+		ids(n - tail, m - tail);
+		removed = new boolean[idsA.length];
+		added = new boolean[idsB.length];
+		compare(0, idsA.length, 0, idsB.length);
+		hunks(line, n - tail, m - tail, action);
+	}
+
+	private static boolean isStart(final MappedByteBuffer buf, final int at) {
+		return at == 0 || buf.get(at - 1) == '\n';
+	}
+
+	/**
+	 * Returns the starts of the lines of a range, which starts a line.
+	 */
+	private static long[] starts(final MappedByteBuffer buf, final int from, final int to) {
+		var ret = new long[16];
+		var n = 0;
+		for (var at = from; at < to; at = next(buf, at, to) + 1) {
+			if (n == ret.length) ret = Arrays.copyOf(ret, n * 2);
+			ret[n++] = at;
+		}
+		return Arrays.copyOf(ret, n);
+	}
+
+	/**
+	 * Returns the offset of the line feed which ends a line, or the end.
+	 */
+	private static int next(final MappedByteBuffer buf, final int from, final int to) {
+		var at = from;
+		while (at < to && buf.get(at) != '\n') at++;
+		return at;
+	}
+
+	/**
+	 * Returns the end of a line without its line feed and {@code \r}.
+	 */
+	private static int end(final MappedByteBuffer buf, final int from, final int to) {
+		final var lf = next(buf, from, to);
+		return lf > from && buf.get(lf - 1) == '\r' ? lf - 1 : lf;
+	}
+
+	/**
+	 * Give each line its id.
+	 */
+	private void ids(final int endA, final int endB) {
+		final var lines = startsA.length + startsB.length;
+		var capacity = 16;
+		while (capacity < lines * 2) capacity <<= 1;
+		final var hashes = new long[capacity];
+		final var ids = new int[capacity];
+		// First line with each id, negative for lines of the second file.
+		final var firsts = new int[lines];
+		idsA = new int[startsA.length];
+		idsB = new int[startsB.length];
+		var count = 0;
+		for (var k = 0; k < lines; k++) {
+			final var inA = k < startsA.length;
+			final var buf = inA ? a : b;
+			final var i = inA ? k : k - startsA.length;
+			final var from = (int) (inA ? startsA[i] : startsB[i]);
+			final var to = end(buf, from, inA ? endA : endB);
+			var h = 0xCBF29CE484222325L;
+			for (var at = from; at < to; at++) h = (h ^ (buf.get(at) & 0xFF)) * 0x100000001B3L;
+			h = h == 0 ? 1 : h ^ h >>> 29;
+			final var mask = capacity - 1;
+			var slot = (int) h & mask;
+			var id = -1;
+			for (; hashes[slot] != 0; slot = (slot + 1) & mask) {
+				if (hashes[slot] == h && same(firsts[ids[slot]], buf, from, to, endA, endB)) {
+					id = ids[slot];
+					break;
+				}
+			}
+			if (id < 0) {
+				id = count++;
+				hashes[slot] = h;
+				ids[slot] = id;
+				firsts[id] = inA ? i : ~i;
+			}
+			if (inA) idsA[i] = id;
+			else idsB[i] = id;
+		}
+	}
+
+	/**
+	 * Compare a line with the first line of an id.
+	 */
+	private boolean same(final int first, final MappedByteBuffer buf, final int from, final int to, final int endA, final int endB) {
+		final var other = first >= 0 ? a : b;
+		final var start = (int) (first >= 0 ? startsA[first] : startsB[~first]);
+		final var stop = end(other, start, first >= 0 ? endA : endB);
+		if (stop - start != to - from) return false;
+		for (var i = 0; i < to - from; i++) if (other.get(start + i) != buf.get(from + i)) return false;
+		return true;
+	}
+
+	/**
+	 * Mark the removed and added lines of two ranges.
+	 */
+	private void compare(final int a0, final int a1, final int b0, final int b1) {
+		var x0 = a0;
+		var y0 = b0;
+		var x1 = a1;
+		var y1 = b1;
+		while (x0 < x1 && y0 < y1 && idsA[x0] == idsB[y0]) {
+			x0++;
+			y0++;
+		}
+		while (x0 < x1 && y0 < y1 && idsA[x1 - 1] == idsB[y1 - 1]) {
+			x1--;
+			y1--;
+		}
+		if (x0 == x1) {
+			Arrays.fill(added, y0, y1, true);
+			return;
+		}
+		if (y0 == y1) {
+			Arrays.fill(removed, x0, x1, true);
+			return;
+		}
+		final var split = bisect(x0, x1, y0, y1);
+		if (split == null) {
+			Arrays.fill(removed, x0, x1, true);
+			Arrays.fill(added, y0, y1, true);
+			return;
+		}
+		compare(x0, split[0], y0, split[1]);
+		compare(split[0], x1, split[1], y1);
+	}
+
+	/**
+	 * Find the middle snake of two ranges.
+	 *
+	 * @return the point where the forward and backward searches meet, or
+	 *         {@code null} if the ranges have nothing in common
+	 */
+	private int[] bisect(final int a0, final int a1, final int b0, final int b1) {
+		final var n = a1 - a0;
+		final var m = b1 - b0;
+		final var max = (n + m + 1) / 2;
+		final var offset = max;
+		final var length = 2 * max + 2;
+		final var v1 = new int[length];
+		final var v2 = new int[length];
+		Arrays.fill(v1, -1);
+		Arrays.fill(v2, -1);
+		v1[offset + 1] = 0;
+		v2[offset + 1] = 0;
+		final var delta = n - m;
+		// With an odd delta, the forward search meets the backward one.
+		final var front = (delta & 1) != 0;
+		int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+		for (var d = 0; d < max; d++) {
+			for (var k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+				final var k1offset = offset + k1;
+				var x1 = k1 == -d || (k1 != d && v1[k1offset - 1] < v1[k1offset + 1]) ? v1[k1offset + 1] : v1[k1offset - 1] + 1;
+				var y1 = x1 - k1;
+				while (x1 < n && y1 < m && idsA[a0 + x1] == idsB[b0 + y1]) {
+					x1++;
+					y1++;
+				}
+				v1[k1offset] = x1;
+				if (x1 > n) k1end += 2;
+				else if (y1 > m) k1start += 2;
+				else if (front) {
+					final var k2offset = offset + delta - k1;
+					if (k2offset >= 0 && k2offset < length && v2[k2offset] != -1 && x1 >= n - v2[k2offset]) return new int[] {a0 + x1, b0 + y1};
+				}
+			}
+			for (var k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+				final var k2offset = offset + k2;
+				var x2 = k2 == -d || (k2 != d && v2[k2offset - 1] < v2[k2offset + 1]) ? v2[k2offset + 1] : v2[k2offset - 1] + 1;
+				var y2 = x2 - k2;
+				while (x2 < n && y2 < m && idsA[a1 - x2 - 1] == idsB[b1 - y2 - 1]) {
+					x2++;
+					y2++;
+				}
+				v2[k2offset] = x2;
+				if (x2 > n) k2end += 2;
+				else if (y2 > m) k2start += 2;
+				else if (!front) {
+					final var k1offset = offset + delta - k2;
+					if (k1offset >= 0 && k1offset < length && v1[k1offset] != -1) {
+						final var x1 = v1[k1offset];
+						if (x1 >= n - x2) return new int[] {a0 + x1, b0 + offset + x1 - k1offset};
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Group the marked lines into hunks.
+	 */
+	private void hunks(final long line, final int endA, final int endB, final Consumer<? super TextFile.Hunk> action) {
+		var i = 0;
+		var j = 0;
+		while (i < removed.length || j < added.length) {
+			if ((i == removed.length || !removed[i]) && (j == added.length || !added[j])) {
+				i++;
+				j++;
+				continue;
+			}
+			final var fromA = i;
+			final var fromB = j;
+			while (i < removed.length && removed[i] || j < added.length && added[j]) {
+				while (i < removed.length && removed[i]) i++;
+				while (j < added.length && added[j]) j++;
+			}
+			action.accept(new TextFile.Hunk(line + fromA, text(a, startsA, fromA, i, endA), line + fromB, text(b, startsB, fromB, j, endB)));
+		}
+	}
+
+	private List<String> text(final MappedByteBuffer buf, final long[] starts, final int from, final int to, final int end) {
+		final var ret = new ArrayList<String>(to - from);
+		var bytes = new byte[256];
+		for (var k = from; k < to; k++) {
+			final var start = (int) starts[k];
+			final var n = end(buf, start, end) - start;
+			if (bytes.length < n) bytes = new byte[n];
+			buf.get(start, bytes, 0, n);
+			ret.add(new String(bytes, 0, n, charset));
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Line offset index.
+ *
+ * <p>Keeps the byte offset where every line of a file starts in a hidden
+ * sidecar next to it, as a plain array of longs which is mapped for lookups.
+ * The sidecar records the length and the modification time of the file and
+ * a checksum of its last bytes: when the file only grew, and those bytes are
+ * still the same, only the new bytes are scanned and their lines appended to
+ * the sidecar. Any other change rebuilds it.</p>
+ *
+ * <p>Lines are found by their {@code \n} bytes, so only ASCII-compatible
+ * files can be indexed.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class LineIndex {
+
+	/** Sidecar header, {@code ARLX}. */
+	private static final int MAGIC = 0x41524C58;
+
+	/** Size of the sidecar header. */
+	private static final int HEADER = 40;
+
+	/** Number of bytes at the end of the file covered by the checksum. */
+	private static final int TAIL = 4096;
+
+	/** Bytes scanned at once. */
+	private static final int CHUNK = 1 << 26;
+
+	/** Line starts in each mapped segment of the sidecar, a power of two. */
+	private static final int SEGMENT = 1 << 27;
+
+	/** Length of the indexed file. */
+	private final long length;
+
+	/** Modification time of the indexed file. */
+	private final long modified;
+
+	/** Number of lines. */
+	private final long count;
+
+	/** Checksum of the last bytes of the indexed file. */
+	private final long tail;
+
+	/** Start of each line, mapped from the sidecar in segments. */
+	private final LongBuffer[] starts;
+
+	private LineIndex(final long length, final long modified, final long count, final long tail, final LongBuffer[] starts) {
+		this.length = length;
+		this.modified = modified;
+		this.count = count;
+		this.tail = tail;
+		this.starts = starts;
+	}
+
+	/**
+	 * Returns the sidecar of the specified file.
+	 *
+	 * @param file the indexed file
+	 *
+	 * @return the sidecar file
+	 */
+	static java.io.File sidecar(final java.io.File file) {
+		return new java.io.File(file.getAbsoluteFile().getParentFile(), "." + file.getName() + ".lines");
+	}
+
+	/**
+	 * Returns an up to date index of the specified file.
+	 *
+	 * @param file  the file to index
+	 * @param known the index already loaded, may be {@code null}
+	 *
+	 * @return the index of the file
+	 *
+	 * @throws IOException if the file or the sidecar can't be read or written
+	 */
+	static LineIndex of(final java.io.File file, final LineIndex known) throws IOException {
+		final var modified = file.lastModified();
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final var length = channel.size();
+			if (known != null && known.length == length && known.modified == modified) return known;
+			final var sidecar = sidecar(file).toPath();
+			if (Files.isRegularFile(sidecar)) {
+				try (var side = FileChannel.open(sidecar, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+					final var header = ByteBuffer.allocate(HEADER);
+					while (header.hasRemaining() && side.read(header, header.position()) > 0) continue;
+					if (!header.hasRemaining() && header.getInt(0) == MAGIC) {
+						final var oldLength = header.getLong(8);
+						final var oldCount = header.getLong(24);
+						final var oldTail = header.getLong(32);
+						if (side.size() >= HEADER + 8 * oldCount) {
+							if (oldLength == length && header.getLong(16) == modified) {
+								return new LineIndex(length, modified, oldCount, oldTail, map(side, oldCount));
+							}
+							if (oldLength < length && checksum(channel, oldLength) == oldTail) {
+								return extend(channel, side, oldLength, oldCount, length, modified);
+							}
+						}
+					}
+				}
+			}
+			// Rebuilt aside, so indexes still mapped from the old sidecar stay valid.
+			final var temp = Files.createTempFile(sidecar.getParent(), sidecar.getFileName().toString(), ".tmp");
+			try (var side = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				final var ret = extend(channel, side, 0, 0, length, modified);
+				Files.move(temp, sidecar, StandardCopyOption.ATOMIC_MOVE);
+				return ret;
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/**
+	 * Index the lines past the indexed bytes and update the header.
+	 */
+	private static LineIndex extend(final FileChannel channel, final FileChannel side, final long from, final long count, final long length, final long modified) throws IOException {
+		final var n = scan(channel, from, length, side, count);
+		final var tail = checksum(channel, length);
+		final var header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).putInt(0).putLong(length).putLong(modified).putLong(n).putLong(tail).flip();
+		while (header.hasRemaining()) side.write(header, header.position());
+		return new LineIndex(length, modified, n, tail, map(side, n));
+	}
+
+	/**
+	 * Append the starts of the lines found between two offsets.
+	 *
+	 * <p>A line feed right before {@code from} was not indexed yet, since
+	 * nothing followed it, so the scan starts one byte early.</p>
+	 *
+	 * @return the new number of lines
+	 */
+	private static long scan(final FileChannel channel, final long from, final long to, final FileChannel side, final long count) throws IOException {
+		final var out = ByteBuffer.allocate(1 << 16);
+		var n = count;
+		var at = HEADER + 8 * count;
+		if (from == 0 && to > 0) {
+			out.putLong(0);
+			n++;
+		}
+		for (var base = Math.max(from - 1, 0); base < to; base += CHUNK) {
+			final var map = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(CHUNK, to - base));
+			final var size = map.limit();
+			for (var i = 0; i < size; i++) {
+				if (map.get(i) != '\n' || base + i + 1 >= to) continue;
+				if (!out.hasRemaining()) at += flush(side, out, at);
+				out.putLong(base + i + 1);
+				n++;
+			}
+		}
+		flush(side, out, at);
+		return n;
+	}
+
+	private static long flush(final FileChannel side, final ByteBuffer out, final long at) throws IOException {
+		out.flip();
+		final var ret = out.remaining();
+		var pos = at;
+		while (out.hasRemaining()) pos += side.write(out, pos);
+		out.clear();
+		return ret;
+	}
+
+	private static LongBuffer[] map(final FileChannel side, final long count) throws IOException {
+		final var ret = new LongBuffer[(int) ((count + SEGMENT - 1) / SEGMENT)];
+		for (var i = 0; i < ret.length; i++) {
+			final var first = (long) i * SEGMENT;
+			ret[i] = side.map(FileChannel.MapMode.READ_ONLY, HEADER + 8 * first, 8 * Math.min(SEGMENT, count - first)).asLongBuffer();
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the checksum of the last bytes before an offset.
+	 */
+	private static long checksum(final FileChannel channel, final long end) throws IOException {
+		final var from = Math.max(end - TAIL, 0);
+		final var buf = ByteBuffer.allocate((int) (end - from));
+		while (buf.hasRemaining() && channel.read(buf, from + buf.position()) > 0) continue;
+		final var crc = new CRC32C();
+		crc.update(buf.flip());
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns the number of lines of the indexed file.
+	 *
+	 * @return the number of lines
+	 */
+	long count() {
+		return count;
+	}
+
+	/**
+	 * Returns the byte offset where a line starts.
+	 *
+	 * @param n the line, from {@code 0} to {@link #count()}; the count gives
+	 *          the length of the file
+	 *
+	 * @return the offset of the first byte of the line
+	 */
+	long start(final long n) {
+		return n >= count ? length : starts[(int) (n / SEGMENT)].get((int) (n & (SEGMENT - 1)));
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * External line sorter.
+ *
+ * <p>Reads lines into runs that fit half of the memory budget. Each run is
+ * sorted with a parallel sort and spilled to a temporary file while the next
+ * one is being read. The runs are then merged through a heap holding the
+ * head of each run. Input that fits a single run is never spilled. The sort
+ * is stable: ties keep the order they had in the input.</p>
+ *
+ * <p>Runs are spilled as length prefixed UTF-8 records, so lines may contain
+ * any char but a line feed.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class LineSorter {
+
+	/** Memory taken by a line besides its chars. */
+	private static final long OVERHEAD = 64;
+
+	/** Size of the stream buffers of the spilled runs. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Order of the lines. */
+	private final Comparator<Line> order;
+
+	/** Numeric key of the lines, {@code null} to compare the lines themselves. */
+	private final ToLongFunction<? super CharSequence> key;
+
+	/** Whether lines equal to the previous one are dropped. */
+	private final boolean distinct;
+
+	/** Maximum memory taken by a run. */
+	private final long runBudget;
+
+	/** Spilled runs. */
+	private final List<Path> runs = new ArrayList<>();
+
+	/**
+	 * Create a sorter.
+	 *
+	 * @param order    the order of the lines, used when {@code key} is
+	 *                 {@code null}
+	 * @param key      the numeric key of each line, or {@code null}
+	 * @param distinct whether to drop lines which compare equal to the
+	 *                 previous one
+	 * @param budget   the memory budget, in bytes
+	 */
+	LineSorter(final Comparator<? super CharSequence> order, final ToLongFunction<? super CharSequence> key, final boolean distinct, final long budget) {
+		this.key = key;
+		this.order = key == null ? (a, b) -> order.compare(a.text, b.text) : (a, b) -> Long.compare(a.key, b.key);
+		this.distinct = distinct;
+		runBudget = Math.max(budget / 2, 1 << 16);
+	}
+
+	/**
+	 * Sort lines into a file.
+	 *
+	 * <p>The input is read completely before the output is opened, so both
+	 * may be the same file.</p>
+	 *
+	 * @param lines   the lines to sort; consumed and closed
+	 * @param out     the file to write
+	 * @param charset the charset of {@code out}
+	 *
+	 * @throws IOException if a run or the output can't be written
+	 */
+	void sort(final Stream<String> lines, final Path out, final Charset charset) throws IOException {
+		CompletableFuture<Void> spill = CompletableFuture.completedFuture(null);
+		try {
+			Line[] last = null;
+			try (lines) {
+				final var it = lines.iterator();
+				var run = new ArrayList<Line>();
+				var weight = 0L;
+				while (it.hasNext()) {
+					final var text = it.next();
+					run.add(new Line(key == null ? 0 : key.applyAsLong(text), text));
+					weight += OVERHEAD + 2L * text.length();
+					if (weight < runBudget) continue;
+					final var sorted = sorted(run);
+					join(spill);
+					spill = CompletableFuture.runAsync(() -> spill(sorted), ForkJoinPool.commonPool());
+					run = new ArrayList<>();
+					weight = 0;
+				}
+				join(spill);
+				last = sorted(run);
+			}
+			if (runs.isEmpty()) {
+				write(out, charset, Arrays.asList(last).iterator());
+				return;
+			}
+			spill(last);
+			merge(out, charset);
+		} finally {
+			settle(spill);
+			for (var v : runs) Files.deleteIfExists(v);
+		}
+	}
+
+	private Line[] sorted(final List<Line> run) {
+		final var ret = run.toArray(new Line[0]);
+		Arrays.parallelSort(ret, order);
+		return ret;
+	}
+
+	private static void join(final CompletableFuture<Void> spill) throws IOException {
+		try {
+			spill.join();
+		} catch (java.util.concurrent.CompletionException ex) {
+			if (ex.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) ex.getCause()).getCause();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Wait for a spill to end, whatever its outcome, so its run file is
+	 * known before the runs are deleted.
+	 */
+	private static void settle(final CompletableFuture<Void> spill) {
+		try {
+			spill.join();
+		} catch (java.util.concurrent.CompletionException | java.util.concurrent.CancellationException ignored) {
+			// Already reported, or superseded by the failure being thrown.
+		}
+	}
+
+	/**
+	 * Write a sorted run to a temporary file.
+	 */
+	private void spill(final Line[] run) {
+		try {
+			final var path = Files.createTempFile(Path.of(aria.Local.TEMP), "aria-sort-", ".run");
+			synchronized (runs) {
+				runs.add(path);
+			}
+			try (var dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE))) {
+				for (var v : run) {
+					final var bytes = v.text.getBytes(StandardCharsets.UTF_8);
+					dos.writeLong(v.key);
+					dos.writeInt(bytes.length);
+					dos.write(bytes);
+				}
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Merge the spilled runs into a file.
+	 */
+	private void merge(final Path out, final Charset charset) throws IOException {
+		final var heap = new PriorityQueue<Run>(runs.size(), (a, b) -> {
+			final var c = order.compare(a.head, b.head);
+			return c != 0 ? c : Integer.compare(a.index, b.index);
+		});
+		try {
+			for (var i = 0; i < runs.size(); i++) {
+				final var run = new Run(runs.get(i), i);
+				if (run.next()) heap.add(run);
+				else run.close();
+			}
+			write(out, charset, new java.util.Iterator<Line>() {
+				@Override
+				public boolean hasNext() {
+					return !heap.isEmpty();
+				}
+
+				@Override
+				public Line next() {
+					final var run = heap.poll();
+					final var ret = run.head;
+					try {
+						if (run.next()) heap.add(run);
+						else run.close();
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+					return ret;
+				}
+			});
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		} finally {
+			for (var v : heap) v.close();
+		}
+	}
+
+	/**
+	 * Write sorted lines, each one followed by a line feed.
+	 */
+	private void write(final Path out, final Charset charset, final java.util.Iterator<Line> lines) throws IOException {
+		try (var w = new BufferedWriter(new java.io.OutputStreamWriter(Files.newOutputStream(out), charset.newEncoder()
+			.onMalformedInput(java.nio.charset.CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(java.nio.charset.CodingErrorAction.REPLACE)), BUFFER_SIZE)) {
+			Line prev = null;
+			while (lines.hasNext()) {
+				final var line = lines.next();
+				if (distinct && prev != null && order.compare(prev, line) == 0) continue;
+				w.write(line.text);
+				w.write('\n');
+				prev = line;
+			}
+		}
+	}
+
+	/**
+	 * A line and its key.
+	 */
+	private static final class Line {
+
+		final long key;
+
+		final String text;
+
+		Line(final long key, final String text) {
+			this.key = key;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * Reader of a spilled run.
+	 */
+	private static final class Run {
+
+		/** Position of the run in the input, to keep the sort stable. */
+		final int index;
+
+		private final DataInputStream in;
+
+		/** The next line of the run. */
+		Line head;
+
+		Run(final Path path, final int index) throws IOException {
+			this.index = index;
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+		}
+
+		/**
+		 * Read the next line of the run.
+		 *
+		 * @return {@code false} at the end of the run
+		 */
+		boolean next() throws IOException {
+			final long key;
+			try {
+				key = in.readLong();
+			} catch (EOFException ex) {
+				head = null;
+				return false;
+			}
+			final var bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			head = new Line(key, new String(bytes, StandardCharsets.UTF_8));
+			return true;
+		}
+
+		void close() {
+			try {
+				in.close();
+			} catch (IOException ex) {
+				System.err.println(ex.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Line Spliterator.
+ *
+ * <p>Splits a byte range of a file into lines ending with {@code \n} or
+ * {@code \r\n}. Splitting halves the range and moves the cut forward to the
+ * next line start, so the file is never read ahead. Each line is handed out
+ * as a view over a buffer reused by this spliterator, which stays valid until
+ * the next line is requested.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class LineSpliterator implements Spliterator<CharSequence> {
+
+	/** Charsets where the {@code \n} byte is always a line feed. */
+	private static final Set<Charset> ASCII_COMPATIBLE = Set.of(
+		StandardCharsets.US_ASCII, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_8);
+
+	/** Ranges smaller than this are not split. */
+	private static final long MIN_SPLIT = 1L << 16;
+
+	/** The channel of the file, shared by every split. */
+	private final FileChannel channel;
+
+	/** The charset of the file. */
+	private final Charset charset;
+
+	/** End of the range, exclusive. */
+	private final long end;
+
+	/** Start of the next line. */
+	private long pos;
+
+	/** The current window. */
+	private MappedByteBuffer window;
+
+	/** Offset of the current window in the file. */
+	private long base;
+
+	/** The last line decoded. */
+	private CharBuffer line = CharBuffer.allocate(256);
+
+	/**
+	 * Create a spliterator over a byte range.
+	 *
+	 * @param channel the channel of the file
+	 * @param charset the charset of the file
+	 * @param pos     the first byte of the range, the start of a line
+	 * @param end     the end of the range, exclusive
+	 */
+	LineSpliterator(final FileChannel channel, final Charset charset, final long pos, final long end) {
+		this.channel = channel;
+		this.charset = charset;
+		this.pos = pos;
+		this.end = end;
+	}
+
+	/**
+	 * Check whether files in the specified charset can be split by bytes.
+	 *
+	 * @param charset the charset
+	 *
+	 * @return {@code true} if the {@code \n} byte always ends a line
+	 */
+	static boolean supports(final Charset charset) {
+		return ASCII_COMPATIBLE.contains(charset);
+	}
+
+	@Override
+	public boolean tryAdvance(final Consumer<? super CharSequence> action) {
+		if (pos >= end) return false;
+		var decoder = MappedText.borrow(charset);
+		try {
+			next(decoder);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		} finally {
+			MappedText.release(decoder);
+		}
+		action.accept(line);
+		return true;
+	}
+
+	/**
+	 * Decode the line starting at {@link #pos} into {@link #line}.
+	 */
+	private void next(final CharsetDecoder decoder) throws IOException {
+		line.clear();
+		while (true) {
+			if (window == null || pos < base || pos >= base + window.capacity()) map(pos);
+			var from = (int) (pos - base);
+			var lim = window.clear().limit();
+			var at = from;
+			while (at < lim && window.get(at) != '\n') at++;
+			var found = at < lim;
+			var last = found || base + lim >= end;
+			window.limit(at).position(from);
+			decode(decoder, last);
+			if (found) {
+				pos = base + at + 1;
+				break;
+			}
+			if (last) {
+				pos = end;
+				break;
+			}
+			pos = base + window.position();
+			window = null;
+		}
+		var n = line.position();
+		if (n > 0 && line.get(n - 1) == '\r') line.position(n - 1);
+		line.flip();
+	}
+
+	/**
+	 * Decode the bytes left in the window, growing the line as needed.
+	 */
+	private void decode(final CharsetDecoder decoder, final boolean last) {
+		while (FastDecoder.decode(decoder, window, line, last).isOverflow()) grow();
+		if (!last) return;
+		while (decoder.flush(line).isOverflow()) grow();
+		decoder.reset();
+	}
+
+	private void grow() {
+		line = CharBuffer.allocate(line.capacity() * 2).put(line.flip());
+	}
+
+	private void map(final long at) throws IOException {
+		base = at;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(MappedText.WINDOW, end - at));
+	}
+
+	/**
+	 * Returns the start of the first line after the specified byte.
+	 *
+	 * @return the offset of the line start, or {@code -1} if there is none
+	 *         before the end of the range
+	 */
+	private long probe(final long from) {
+		var buf = ByteBuffer.allocate(8192);
+		try {
+			for (var at = from; at < end; at += buf.limit()) {
+				buf.clear();
+				if (channel.read(buf, at) < 0) break;
+				buf.flip();
+				for (var i = 0; i < buf.limit(); i++) if (buf.get(i) == '\n') return at + i + 1;
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return -1;
+	}
+
+	@Override
+	public Spliterator<CharSequence> trySplit() {
+		if (end - pos < MIN_SPLIT) return null;
+		var cut = probe(pos + (end - pos) / 2);
+		if (cut < 0 || cut >= end) return null;
+		var prefix = new LineSpliterator(channel, charset, pos, cut);
+		pos = cut;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return end - pos;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
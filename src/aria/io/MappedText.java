@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory-mapped text decoder.
+ *
+ * <p>Decodes the contents of a file straight from mapped windows of at most
+ * {@link #WINDOW} bytes, so files larger than 2 GB can be read as well. A
+ * character split across two windows is picked up again by remapping from the
+ * first byte the decoder did not consume.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class MappedText implements java.io.Closeable {
+
+	/** Size of each mapped window. */
+	static final long WINDOW = 1L << 26;
+
+	/** Files of this size or larger are read through this decoder by default. */
+	static final long THRESHOLD = 1L << 20;
+
+	/** Largest array the VM is willing to allocate. */
+	private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+	/** Idle decoders of each thread, by charset. */
+	private static final ThreadLocal<Map<Charset, ArrayDeque<CharsetDecoder>>> DECODERS = ThreadLocal.withInitial(HashMap::new);
+
+	/** The channel of the mapped file. */
+	private final FileChannel channel;
+
+	/** The decoder in use. */
+	private final CharsetDecoder decoder;
+
+	/** Size of the file when it was opened. */
+	private final long size;
+
+	/** Chars decoded but not yet handed out. */
+	private final CharBuffer spill = CharBuffer.allocate(8192).flip();
+
+	/** The current window. */
+	private MappedByteBuffer window;
+
+	/** Offset of the current window in the file. */
+	private long base;
+
+	/** Whether the decoder has been flushed. */
+	private boolean flushed;
+
+	/**
+	 * Open a file for decoding.
+	 *
+	 * @param path    the path to the file
+	 * @param charset the charset of the file
+	 *
+	 * @throws IOException if the file can't be opened or mapped
+	 */
+	MappedText(final Path path, final Charset charset) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			size = channel.size();
+			map(0);
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+		decoder = borrow(charset);
+	}
+
+	/**
+	 * Take an idle decoder of the calling thread, or create a new one.
+	 *
+	 * <p>The decoder should be given back with {@link #release} once it is no
+	 * longer in use.</p>
+	 *
+	 * @param charset the charset
+	 *
+	 * @return a reset decoder which replaces malformed input
+	 */
+	static CharsetDecoder borrow(final Charset charset) {
+		var idle = DECODERS.get().get(charset);
+		var decoder = idle == null ? null : idle.poll();
+		if (decoder == null) decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return decoder.reset();
+	}
+
+	/**
+	 * Give a decoder back to the calling thread.
+	 *
+	 * @param decoder a decoder taken with {@link #borrow}
+	 */
+	static void release(final CharsetDecoder decoder) {
+		DECODERS.get().computeIfAbsent(decoder.charset(), cs -> new ArrayDeque<>()).push(decoder);
+	}
+
+	/**
+	 * Map the window starting at the specified byte.
+	 *
+	 * @param at the offset of the window in the file
+	 *
+	 * @throws IOException if the window can't be mapped
+	 */
+	private void map(final long at) throws IOException {
+		base = at;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(WINDOW, size - at));
+	}
+
+	/**
+	 * Decode the next chars into {@code out}.
+	 *
+	 * @param out the destination buffer
+	 *
+	 * @return {@code false} if the end of the file was reached
+	 *
+	 * @throws IOException if the next window can't be mapped
+	 */
+	private boolean step(final CharBuffer out) throws IOException {
+		if (flushed) return false;
+		var last = base + window.limit() >= size;
+		if (FastDecoder.decode(decoder, window, out, last).isOverflow()) return true;
+		if (!last) {
+			map(base + window.position());
+			return true;
+		}
+		if (decoder.flush(out).isOverflow()) return true;
+		flushed = true;
+		return false;
+	}
+
+	/**
+	 * Move the chars left in the spill buffer to {@code out}.
+	 *
+	 * @param out the destination buffer
+	 */
+	private void drain(final CharBuffer out) {
+		if (!spill.hasRemaining()) return;
+		var n = Math.min(spill.remaining(), out.remaining());
+		out.put(spill.array(), spill.position(), n);
+		spill.position(spill.position() + n);
+	}
+
+	/**
+	 * Decode chars into {@code out} until it is full or the file ends.
+	 *
+	 * @param out the destination buffer
+	 *
+	 * @return the number of chars decoded, or {@code -1} at the end of the file
+	 *
+	 * @throws IOException if a window can't be mapped
+	 */
+	int read(final CharBuffer out) throws IOException {
+		var start = out.position();
+		drain(out);
+		while (out.hasRemaining()) {
+			var before = out.position();
+			if (!step(out)) break;
+			if (out.position() > before || out.remaining() > 1) continue;
+			// A surrogate pair does not fit in the single slot left.
+			spill.clear();
+			step(spill);
+			spill.flip();
+			drain(out);
+		}
+		var n = out.position() - start;
+		return n == 0 && flushed && !spill.hasRemaining() ? -1 : n;
+	}
+
+	/**
+	 * Discard the next {@code n} chars.
+	 *
+	 * @param n the number of chars to discard
+	 *
+	 * @return the number of chars actually discarded
+	 *
+	 * @throws IOException if a window can't be mapped
+	 */
+	long skip(final long n) throws IOException {
+		var left = n;
+		while (left > 0) {
+			if (!spill.hasRemaining()) {
+				spill.clear();
+				var more = step(spill);
+				spill.flip();
+				if (!more && !spill.hasRemaining()) break;
+			}
+			var k = (int) Math.min(left, spill.remaining());
+			spill.position(spill.position() + k);
+			left -= k;
+		}
+		return n - left;
+	}
+
+	/**
+	 * Returns the offset of the first byte not decoded yet.
+	 *
+	 * @return the current byte offset in the file
+	 */
+	long position() {
+		return base + window.position();
+	}
+
+	/**
+	 * Returns the number of chars decoded but not handed out yet.
+	 *
+	 * <p>Those chars come from the bytes before {@link #position()}.</p>
+	 *
+	 * @return the number of pending chars
+	 */
+	int pending() {
+		return spill.remaining();
+	}
+
+	/**
+	 * Restart decoding at the specified byte.
+	 *
+	 * <p>The byte must be the first one of a char.</p>
+	 *
+	 * @param at the byte offset in the file
+	 *
+	 * @throws IOException if the window can't be mapped
+	 */
+	void seek(final long at) throws IOException {
+		decoder.reset();
+		spill.clear().flip();
+		flushed = false;
+		map(Math.min(Math.max(at, 0), size));
+	}
+
+	/**
+	 * Decode the next chars into a new array.
+	 *
+	 * @param len the maximum number of chars, or {@code 0} to read up to the
+	 *            end of the file
+	 *
+	 * @return the decoded chars
+	 *
+	 * @throws IOException if a window can't be mapped or if the remaining
+	 *                     chars don't fit in an array
+	 */
+	char[] read(final int len) throws IOException {
+		var estimate = (long) ((size - base) * (double) decoder.averageCharsPerByte()) + 16;
+		var out = CharBuffer.allocate((int) Math.min(len > 0 ? Math.min(len, estimate) : estimate, MAX_ARRAY));
+		while (read(out) > -1) {
+			if (out.hasRemaining()) continue;
+			if (out.position() == len) break;
+			if (out.capacity() == MAX_ARRAY) throw new IOException("Too many chars to be read at once.");
+			var grown = CharBuffer.allocate((int) Math.min(len > 0 ? Math.min(out.capacity() * 2L, len) : out.capacity() * 2L, MAX_ARRAY));
+			out = grown.put(out.flip());
+		}
+		return out.hasRemaining() ? Arrays.copyOf(out.array(), out.position()) : out.array();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!channel.isOpen()) return;
+		release(decoder);
+		channel.close();
+	}
+}
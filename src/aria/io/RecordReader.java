@@ -0,0 +1,564 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Delimited Record Reader.
+ *
+ * <p>Reads CSV, TSV and similar files one record at a time, straight from
+ * mapped windows of the file. The fields of the current record are decoded
+ * into a buffer reused by this reader and handed out as views over it, which
+ * stay valid until {@link #next()} is called again; numbers are parsed from
+ * those views without creating Strings.</p>
+ *
+ * <p>Records end with {@code \n} or {@code \r\n}. A quote opens or closes a
+ * quoted section anywhere in a field, where delimiters and line feeds are
+ * plain chars and two quotes in a row stand for one. When an escape char is
+ * given, it makes the char after it plain, inside or outside quotes. Only
+ * ASCII-compatible files can be read, with ASCII delimiters, quotes and
+ * escapes.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+public final class RecordReader implements java.io.Closeable {
+
+	/** Stands for a missing quote or escape; no byte is equal to it. */
+	private static final int NONE = 0x100;
+
+	/** Bytes scanned by a single task when reading in parallel. */
+	private static final long CHUNK = 1L << 24;
+
+	/** Powers of ten which are exact doubles. */
+	private static final double[] POW10 = new double[23];
+
+	static {
+		POW10[0] = 1;
+		for (var i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+	}
+
+	/** The channel of the file. */
+	private final FileChannel channel;
+
+	/** Whether {@link #channel} is closed with this reader. */
+	private final boolean owner;
+
+	/** The charset of the file. */
+	private final Charset charset;
+
+	/** Field delimiter. */
+	private final byte delimiter;
+
+	/** Quote, or {@link #NONE} if fields are not quoted. */
+	private final int quote;
+
+	/** Escape, or {@link #NONE} if there is none. */
+	private final int escape;
+
+	/** End of the range, exclusive. */
+	private final long end;
+
+	/** Start of the next record. */
+	private long pos;
+
+	/** The current window. */
+	private MappedByteBuffer window;
+
+	/** Offset of the current window in the file. */
+	private long base;
+
+	/** The chars of the current record. */
+	private CharBuffer text = CharBuffer.allocate(1024);
+
+	/** Start of each field in {@link #text}. */
+	private int[] starts = new int[16];
+
+	/** End of each field in {@link #text}. */
+	private int[] ends = new int[16];
+
+	/** Views over the fields. */
+	private Field[] fields = new Field[0];
+
+	/** Number of fields of the current record. */
+	private int size;
+
+	/**
+	 * Open a reader over a whole file.
+	 *
+	 * @param path      the path to the file
+	 * @param charset   the charset of the file
+	 * @param delimiter the field delimiter
+	 * @param quote     the quote, or {@code \0} if fields are not quoted
+	 * @param escape    the escape, or {@code \0} if there is none
+	 *
+	 * @throws IOException if the file can't be opened
+	 */
+	RecordReader(final Path path, final Charset charset, final char delimiter, final char quote, final char escape) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.READ), true, charset, delimiter, quote, escape, 0, -1);
+	}
+
+	private RecordReader(final FileChannel channel, final boolean owner, final Charset charset, final char delimiter, final char quote, final char escape, final long pos, final long end) throws IOException {
+		if (!LineSpliterator.supports(charset)) throw new IllegalArgumentException("Can't read records of " + charset + " files.");
+		if (delimiter >= 0x80 || quote >= 0x80 || escape >= 0x80) throw new IllegalArgumentException("Delimiters, quotes and escapes must be ASCII.");
+		this.channel = channel;
+		this.owner = owner;
+		this.charset = charset;
+		this.delimiter = (byte) delimiter;
+		this.quote = quote == 0 ? NONE : quote;
+		this.escape = escape == 0 ? NONE : escape;
+		this.pos = pos;
+		this.end = end < 0 ? channel.size() : end;
+	}
+
+	/**
+	 * Read every record of a file in parallel.
+	 *
+	 * <p>The file is cut in chunks at the first line feed of each chunk which
+	 * is not quoted nor escaped; to know which ones are, the quotes of every
+	 * chunk are counted in parallel first. Each chunk is then read by its own
+	 * reader, so {@code action} is called concurrently, once per record, with
+	 * the reader positioned on it.</p>
+	 *
+	 * @param path      the path to the file
+	 * @param charset   the charset of the file
+	 * @param delimiter the field delimiter
+	 * @param quote     the quote, or {@code \0} if fields are not quoted
+	 * @param escape    the escape, or {@code \0} if there is none
+	 * @param action    called with a reader on each record
+	 *
+	 * @throws IOException if the file can't be read
+	 */
+	static void forEach(final Path path, final Charset charset, final char delimiter, final char quote, final char escape, final Consumer<? super RecordReader> action) throws IOException {
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final var size = channel.size();
+			final var chunks = (int) Math.max(1, (size + CHUNK - 1) / CHUNK);
+			final var q = quote == 0 ? NONE : quote;
+			final var e = escape == 0 ? NONE : escape;
+			// For each chunk, the quote parity and whether the chunk ends escaped,
+			// starting unescaped [0] and escaped [1].
+			final var states = new int[chunks][];
+			IntStream.range(0, chunks).parallel().forEach(i -> states[i] = states(channel, i * CHUNK, Math.min(size, (i + 1) * CHUNK), q, e));
+			final var quoted = new boolean[chunks];
+			final var escaped = new boolean[chunks];
+			for (var i = 1; i < chunks; i++) {
+				final var s = states[i - 1][escaped[i - 1] ? 1 : 0];
+				quoted[i] = quoted[i - 1] ^ (s & 1) != 0;
+				escaped[i] = (s & 2) != 0;
+			}
+			final var cuts = new long[chunks + 1];
+			cuts[chunks] = size;
+			IntStream.range(1, chunks).parallel().forEach(i -> cuts[i] = boundary(channel, i * CHUNK, Math.min(size, (i + 1) * CHUNK), quoted[i], escaped[i], q, e));
+			IntStream.range(0, chunks).parallel().forEach(i -> {
+				if (cuts[i] < 0) return;
+				var to = size;
+				for (var j = i + 1; j < chunks; j++) {
+					if (cuts[j] < 0) continue;
+					to = cuts[j];
+					break;
+				}
+				try (var reader = new RecordReader(channel, false, charset, delimiter, quote, escape, cuts[i], to)) {
+					while (reader.next()) action.accept(reader);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Count the quotes of a chunk, from an unescaped and from an escaped start.
+	 *
+	 * @return for each start, bit 0 set if the quotes are odd and bit 1 set if
+	 *         the chunk ends escaped
+	 */
+	private static int[] states(final FileChannel channel, final long from, final long to, final int quote, final int escape) {
+		final var ret = new int[2];
+		try {
+			final var map = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+			final var n = map.limit();
+			// Both starts run together until their escape states meet.
+			boolean a = false, b = true;
+			int pa = 0, pb = 0, i = 0;
+			for (; i < n && a != b; i++) {
+				final var c = map.get(i);
+				if (a) a = false;
+				else if (c == escape) a = true;
+				else if (c == quote) pa ^= 1;
+				if (b) b = false;
+				else if (c == escape) b = true;
+				else if (c == quote) pb ^= 1;
+			}
+			for (; i < n; i++) {
+				final var c = map.get(i);
+				if (a) a = false;
+				else if (c == escape) a = true;
+				else if (c == quote) {
+					pa ^= 1;
+					pb ^= 1;
+				}
+				b = a;
+			}
+			ret[0] = pa | (a ? 2 : 0);
+			ret[1] = pb | (b ? 2 : 0);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the start of the first record which starts inside a chunk.
+	 *
+	 * @return the offset after the first plain line feed, or {@code -1} if
+	 *         there is none in the chunk
+	 */
+	private static long boundary(final FileChannel channel, final long from, final long to, final boolean quoted, final boolean escaped, final int quote, final int escape) {
+		try {
+			final var map = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+			var inQuotes = quoted;
+			var esc = escaped;
+			for (var i = 0; i < map.limit(); i++) {
+				final var c = map.get(i);
+				if (esc) esc = false;
+				else if (c == escape) esc = true;
+				else if (c == quote) inQuotes = !inQuotes;
+				else if (c == '\n' && !inQuotes) return from + i + 1;
+			}
+			return -1;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Move to the next record.
+	 *
+	 * @return {@code false} if there are no more records
+	 *
+	 * @throws IOException if the file can't be mapped
+	 */
+	public boolean next() throws IOException {
+		size = 0;
+		if (pos >= end) return false;
+		final var decoder = MappedText.borrow(charset);
+		try {
+			while (!parse(decoder)) {
+				if (base == pos && window.capacity() == MappedText.WINDOW) throw new IOException("Record at " + pos + " is too long.");
+				map(pos);
+			}
+		} finally {
+			MappedText.release(decoder);
+		}
+		return true;
+	}
+
+	/**
+	 * Parse the record at {@link #pos}.
+	 *
+	 * @return {@code false} if the record does not fit the window
+	 */
+	private boolean parse(final CharsetDecoder decoder) throws IOException {
+		if (window == null || pos < base || pos >= base + window.capacity()) map(pos);
+		text.clear();
+		size = 0;
+		final var lim = window.capacity();
+		final var last = base + lim >= end;
+		var at = (int) (pos - base);
+		var run = at;
+		var field = 0;
+		var inQuotes = false;
+		while (true) {
+			if (at >= lim) {
+				if (!last) return false;
+				decode(decoder, run, at);
+				field(field, false);
+				pos = end;
+				return true;
+			}
+			final var c = window.get(at);
+			if (c == escape) {
+				decode(decoder, run, at);
+				if (at + 1 >= lim) {
+					if (!last) return false;
+					run = at = lim;
+					continue;
+				}
+				run = at + 1;
+				at += 2;
+			} else if (c == quote) {
+				decode(decoder, run, at);
+				if (inQuotes && at + 1 < lim && window.get(at + 1) == quote) {
+					run = at + 1;
+					at += 2;
+					continue;
+				}
+				if (inQuotes && at + 1 >= lim && !last) return false;
+				inQuotes = !inQuotes;
+				run = ++at;
+			} else if (inQuotes) {
+				at++;
+			} else if (c == delimiter) {
+				decode(decoder, run, at);
+				field = field(field, true);
+				run = ++at;
+			} else if (c == '\n') {
+				final var cr = at > run && window.get(at - 1) == '\r';
+				decode(decoder, run, cr ? at - 1 : at);
+				field(field, false);
+				pos = base + at + 1;
+				return true;
+			} else {
+				at++;
+			}
+		}
+	}
+
+	/**
+	 * End a field.
+	 *
+	 * @param start the start of the field in {@link #text}
+	 * @param more  whether another field follows
+	 *
+	 * @return the start of the next field
+	 */
+	private int field(final int start, final boolean more) {
+		if (size == starts.length) {
+			starts = java.util.Arrays.copyOf(starts, size * 2);
+			ends = java.util.Arrays.copyOf(ends, size * 2);
+		}
+		starts[size] = start;
+		ends[size++] = text.position();
+		return more ? text.position() : -1;
+	}
+
+	/**
+	 * Decode a run of plain bytes of the window.
+	 */
+	private void decode(final CharsetDecoder decoder, final int from, final int to) {
+		if (to <= from) return;
+		window.limit(to).position(from);
+		while (FastDecoder.decode(decoder, window, text, true).isOverflow()) grow();
+		while (decoder.flush(text).isOverflow()) grow();
+		decoder.reset();
+		window.clear();
+	}
+
+	private void grow() {
+		text = CharBuffer.allocate(text.capacity() * 2).put(text.flip());
+	}
+
+	private void map(final long at) throws IOException {
+		base = at;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(MappedText.WINDOW, end - at));
+	}
+
+	/**
+	 * Returns the number of fields of the current record.
+	 *
+	 * @return the number of fields
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a field of the current record.
+	 *
+	 * @param i the index of the field
+	 *
+	 * @return a view over the field, valid until the next record is read
+	 */
+	public CharSequence get(final int i) {
+		check(i);
+		if (fields.length < size) {
+			final var grown = java.util.Arrays.copyOf(fields, Math.max(size, fields.length * 2));
+			for (var k = fields.length; k < grown.length; k++) grown[k] = new Field(k);
+			fields = grown;
+		}
+		return fields[i];
+	}
+
+	/**
+	 * Parse a field of the current record as an {@code int}.
+	 *
+	 * @param i the index of the field
+	 *
+	 * @return the value of the field
+	 *
+	 * @throws NumberFormatException if the field is not an {@code int}
+	 */
+	public int getInt(final int i) {
+		final var ret = getLong(i);
+		if (ret != (int) ret) throw new NumberFormatException("Field " + i + " is out of range.");
+		return (int) ret;
+	}
+
+	/**
+	 * Parse a field of the current record as a {@code long}.
+	 *
+	 * @param i the index of the field
+	 *
+	 * @return the value of the field
+	 *
+	 * @throws NumberFormatException if the field is not a {@code long}
+	 */
+	public long getLong(final int i) {
+		check(i);
+		var at = starts[i];
+		final var to = ends[i];
+		final var negative = at < to && text.get(at) == '-';
+		if (at < to && (negative || text.get(at) == '+')) at++;
+		if (at == to) throw new NumberFormatException("Field " + i + " is not a number.");
+		var ret = 0L;
+		for (; at < to; at++) {
+			final var d = text.get(at) - '0';
+			if (d < 0 || d > 9) throw new NumberFormatException("Field " + i + " is not a number.");
+			// Accumulated as a negative number, which has the larger range.
+			if (ret < (Long.MIN_VALUE + d) / 10) throw new NumberFormatException("Field " + i + " is out of range.");
+			ret = ret * 10 - d;
+		}
+		if (negative) return ret;
+		if (ret == Long.MIN_VALUE) throw new NumberFormatException("Field " + i + " is out of range.");
+		return -ret;
+	}
+
+	/**
+	 * Parse a field of the current record as a {@code double}.
+	 *
+	 * <p>Decimal numbers with up to 18 digits and small exponents are parsed
+	 * without creating any object; anything else is left to
+	 * {@link Double#parseDouble(String)}.</p>
+	 *
+	 * @param i the index of the field
+	 *
+	 * @return the value of the field
+	 *
+	 * @throws NumberFormatException if the field is not a number
+	 */
+	public double getDouble(final int i) {
+		check(i);
+		var at = starts[i];
+		final var to = ends[i];
+		final var negative = at < to && text.get(at) == '-';
+		if (at < to && (negative || text.get(at) == '+')) at++;
+		var mantissa = 0L;
+		int digits = 0, scale = 0;
+		var dot = false;
+		for (; at < to; at++) {
+			final var c = text.get(at);
+			if (c == '.' && !dot) {
+				dot = true;
+				continue;
+			}
+			if (c < '0' || c > '9') break;
+			if (mantissa == 0 && c == '0') {
+				if (dot) scale--;
+				continue;
+			}
+			if (++digits > 18) return slow(i);
+			mantissa = mantissa * 10 + (c - '0');
+			if (dot) scale--;
+		}
+		if (at < to) {
+			final var c = text.get(at);
+			if (c != 'e' && c != 'E') return slow(i);
+			var exp = 0;
+			final var sign = ++at < to && text.get(at) == '-';
+			if (at < to && (sign || text.get(at) == '+')) at++;
+			if (at == to) return slow(i);
+			for (; at < to; at++) {
+				final var d = text.get(at) - '0';
+				if (d < 0 || d > 9 || exp > 1000) return slow(i);
+				exp = exp * 10 + d;
+			}
+			scale += sign ? -exp : exp;
+		}
+		if (digits == 0 && !hasDigit(i)) return slow(i);
+		double ret = mantissa;
+		if (mantissa != 0) {
+			if (mantissa >= 1L << 53 || scale < -22 || scale > 22) return slow(i);
+			ret = scale < 0 ? ret / POW10[-scale] : ret * POW10[scale];
+		}
+		return negative ? -ret : ret;
+	}
+
+	private boolean hasDigit(final int i) {
+		for (var k = starts[i]; k < ends[i]; k++) if (text.get(k) >= '0' && text.get(k) <= '9') return true;
+		return false;
+	}
+
+	private double slow(final int i) {
+		return Double.parseDouble(get(i).toString());
+	}
+
+	private void check(final int i) {
+		if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Field " + i + " of a record with " + size + " fields.");
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		if (owner) channel.close();
+	}
+
+	/**
+	 * View over a field of the current record.
+	 */
+	private final class Field implements CharSequence {
+
+		private final int index;
+
+		Field(final int index) {
+			this.index = index;
+		}
+
+		@Override
+		public int length() {
+			return ends[index] - starts[index];
+		}
+
+		@Override
+		public char charAt(final int i) {
+			if (i < 0 || i >= length()) throw new IndexOutOfBoundsException(i);
+			return text.get(starts[index] + i);
+		}
+
+		@Override
+		public CharSequence subSequence(final int from, final int to) {
+			return toString().substring(from, to);
+		}
+
+		@Override
+		public String toString() {
+			return new String(text.array(), text.arrayOffset() + starts[index], length());
+		}
+	}
+}
@@ -0,0 +1,533 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ring Buffer Appender.
+ *
+ * <p>Messages from any number of threads are encoded straight into the
+ * slots of a ring of pre-allocated direct memory, without taking any lock:
+ * each producer claims the next sequence with a compare-and-set and
+ * publishes its slot once it is filled. A single background thread writes
+ * every run of published slots at the end of the file with one gathering
+ * write, and frees them for the producers.</p>
+ *
+ * <p>The background thread idles as its {@link Wait} strategy dictates, and
+ * producers which find the ring full act as the {@link Overflow} policy
+ * dictates. Messages longer than a slot are always spilled, and each
+ * producer keeps its order: until its spilled messages are written, it
+ * spills its next ones with the {@link Overflow#SPILL SPILL} policy, or
+ * waits for them with any other.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+public final class RingAppender implements java.io.Closeable, java.io.Flushable {
+
+	/** Slots written at most with a single gathering write. */
+	private static final int BATCH = 1024;
+
+	/** Spins before yielding or parking. */
+	private static final int SPINS = 100;
+
+	/** Time a sleeping or waiting thread parks, in nanoseconds. */
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/** Longest wait of the blocking strategy, in case a signal is missed. */
+	private static final long BLOCK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/** The channel of the file. */
+	private final FileChannel channel;
+
+	/** The charset of the messages. */
+	private final Charset charset;
+
+	/** The encoder of each producer. */
+	private final ThreadLocal<CharsetEncoder> encoders;
+
+	/** The slots, views over a single direct buffer. */
+	private final ByteBuffer[] slots;
+
+	/** Size of each slot. */
+	private final int slotSize;
+
+	/** Bits of a sequence which pick its slot. */
+	private final int bits;
+
+	/** Lap of the sequence published in each slot, {@code -1} if none. */
+	private final AtomicIntegerArray published;
+
+	/** Last claimed sequence. */
+	private final AtomicLong claimed = new AtomicLong(-1);
+
+	/** Last written sequence. */
+	private volatile long consumed = -1;
+
+	/** Messages which took the spill path, in order. */
+	private final ConcurrentLinkedQueue<Spilled> spill = new ConcurrentLinkedQueue<>();
+
+	/** Last message spilled by each producer. */
+	private final ThreadLocal<Spilled> lastSpilled = new ThreadLocal<>();
+
+	/** Number of spilled messages. */
+	private final AtomicLong spilled = new AtomicLong();
+
+	/** Number of spilled messages written. */
+	private volatile long spillWritten;
+
+	/** Number of dropped messages. */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** Number of appends in progress. */
+	private final AtomicInteger inflight = new AtomicInteger();
+
+	/** How the background thread waits for messages. */
+	private final Wait wait;
+
+	/** What producers do when the ring is full. */
+	private final Overflow overflow;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signaled when there are messages, with the blocking strategy. */
+	private final Condition ready = lock.newCondition();
+
+	/** Whether the background thread is waiting on {@link #ready}. */
+	private volatile boolean waiting;
+
+	/** The thread writing the messages. */
+	private final Thread consumer;
+
+	/** Whether this appender was closed. */
+	private volatile boolean closed;
+
+	/** The error which stopped the background thread. */
+	private volatile IOException failure;
+
+	/**
+	 * Open an appender over a file.
+	 *
+	 * @param path     the path to the file, created if missing
+	 * @param charset  the charset of the messages
+	 * @param slots    number of slots, rounded up to a power of two
+	 * @param slotSize size of each slot, the longest message which is not
+	 *                 spilled
+	 * @param wait     how the background thread waits for messages
+	 * @param overflow what producers do when the ring is full
+	 *
+	 * @throws IOException if the file can't be opened
+	 */
+	RingAppender(final Path path, final Charset charset, final int slots, final int slotSize, final Wait wait, final Overflow overflow) throws IOException {
+		if (slots <= 0 || slots > 1 << 24) throw new IllegalArgumentException("Invalid number of slots: " + slots);
+		if (slotSize <= 0 || (long) slotSize * slots > 1 << 30) throw new IllegalArgumentException("Invalid slot size: " + slotSize);
+		bits = 32 - Integer.numberOfLeadingZeros(slots - 1);
+		final var size = 1 << bits;
+		final var memory = ByteBuffer.allocateDirect(size * slotSize);
+		this.slots = new ByteBuffer[size];
+		for (var i = 0; i < size; i++) this.slots[i] = memory.slice(i * slotSize, slotSize);
+		published = new AtomicIntegerArray(size);
+		for (var i = 0; i < size; i++) published.set(i, -1);
+		this.slotSize = slotSize;
+		this.charset = charset;
+		encoders = ThreadLocal.withInitial(() -> charset.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE));
+		this.wait = wait == null ? Wait.SLEEPING : wait;
+		this.overflow = overflow == null ? Overflow.BLOCK : overflow;
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		consumer = new Thread(this::run, "aria-ring-" + path.getFileName());
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Append a message.
+	 *
+	 * <p>The message is in the file once a later {@link #flush()} or
+	 * {@link #close()} returns.</p>
+	 *
+	 * @param message the message
+	 *
+	 * @return {@code false} if the ring was full and the message was dropped
+	 *
+	 * @throws IOException if this appender is closed or failed to write
+	 */
+	public boolean append(final CharSequence message) throws IOException {
+		inflight.incrementAndGet();
+		try {
+			check();
+			final var encoder = encoders.get();
+			ByteBuffer bytes = null;
+			if (message.length() * encoder.maxBytesPerChar() > slotSize) {
+				bytes = encoder.reset().encode(CharBuffer.wrap(message));
+				if (bytes.remaining() > slotSize) {
+					spill(bytes);
+					return true;
+				}
+			}
+			// A producer keeps its order until its spilled messages are written.
+			final var last = lastSpilled.get();
+			if (last != null && !last.written) {
+				if (overflow == Overflow.SPILL) {
+					spill(bytes != null ? bytes : encoder.reset().encode(CharBuffer.wrap(message)));
+					return true;
+				}
+				while (!last.written) {
+					check();
+					wake();
+					LockSupport.parkNanos(PARK_NANOS);
+				}
+			}
+			final var seq = claim();
+			if (seq < 0) {
+				if (overflow == Overflow.DROP) {
+					dropped.incrementAndGet();
+					return false;
+				}
+				spill(bytes != null ? bytes : encoder.reset().encode(CharBuffer.wrap(message)));
+				return true;
+			}
+			final var slot = slots[(int) seq & (slots.length - 1)];
+			slot.clear();
+			if (bytes != null) slot.put(bytes);
+			else {
+				encoder.reset().encode(CharBuffer.wrap(message), slot, true);
+				encoder.flush(slot);
+			}
+			publish(seq);
+			return true;
+		} finally {
+			inflight.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Claim the next sequence.
+	 *
+	 * @return the sequence, or {@code -1} if the ring is full and the policy
+	 *         is not to block
+	 */
+	private long claim() throws IOException {
+		while (true) {
+			final var current = claimed.get();
+			final var next = current + 1;
+			if (next - slots.length > consumed) {
+				if (overflow != Overflow.BLOCK) return -1;
+				check();
+				wake();
+				LockSupport.parkNanos(PARK_NANOS);
+				continue;
+			}
+			if (claimed.compareAndSet(current, next)) return next;
+		}
+	}
+
+	private void publish(final long seq) {
+		published.set((int) seq & (slots.length - 1), (int) (seq >>> bits));
+		if (waiting) wake();
+	}
+
+	private void spill(final ByteBuffer bytes) {
+		final var copy = new byte[bytes.remaining()];
+		bytes.get(copy);
+		final var message = new Spilled(copy, claimed.get());
+		lastSpilled.set(message);
+		spilled.incrementAndGet();
+		spill.add(message);
+		if (waiting) wake();
+	}
+
+	/**
+	 * Wake the background thread if it is blocked.
+	 */
+	private void wake() {
+		if (wait != Wait.BLOCKING) return;
+		lock.lock();
+		try {
+			ready.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write every message appended so far.
+	 *
+	 * @throws IOException if the messages can't be written
+	 */
+	@Override
+	public void flush() throws IOException {
+		final var target = claimed.get();
+		final var spillTarget = spilled.get();
+		while ((consumed < target || spillWritten < spillTarget) && failure == null) {
+			if (!consumer.isAlive()) break;
+			wake();
+			LockSupport.parkNanos(PARK_NANOS);
+			if (Thread.interrupted()) {
+				Thread.currentThread().interrupt();
+				throw new java.io.InterruptedIOException("Flush interrupted.");
+			}
+		}
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * Write every pending message and close the file.
+	 *
+	 * @throws IOException if the messages can't be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		wake();
+		try {
+			consumer.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new java.io.InterruptedIOException(ex.getMessage());
+		} finally {
+			channel.close();
+		}
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * Returns the number of messages dropped because the ring was full.
+	 *
+	 * @return the dropped messages
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Returns the number of messages which took the spill path.
+	 *
+	 * @return the spilled messages
+	 */
+	public long getSpilled() {
+		return spilled.get();
+	}
+
+	/**
+	 * Returns the charset of the messages.
+	 *
+	 * @return the charset
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Throw if this appender can't take more messages.
+	 */
+	private void check() throws IOException {
+		if (failure != null) throw failure;
+		if (closed) throw new IOException("Appender is closed.");
+	}
+
+	/**
+	 * Write messages until this appender is closed and drained.
+	 */
+	private void run() {
+		final var batch = new ByteBuffer[BATCH];
+		final var written = new Spilled[BATCH];
+		var idle = 0;
+		try {
+			while (true) {
+				if (writeSpilled(batch, written)) {
+					idle = 0;
+					continue;
+				}
+				final var next = consumed + 1;
+				final var last = claimed.get();
+				var hi = next - 1;
+				while (hi < last && hi - next + 1 < BATCH && isPublished(hi + 1)) hi++;
+				if (hi >= next) {
+					write(batch, next, hi);
+					consumed = hi;
+					idle = 0;
+					continue;
+				}
+				if (closed && inflight.get() == 0 && claimed.get() == consumed && spill.isEmpty()) break;
+				idle = idle(idle);
+			}
+		} catch (IOException ex) {
+			failure = ex;
+		} catch (InterruptedException ex) {
+			failure = new java.io.InterruptedIOException(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Write the spilled messages which follow every written slot, with a
+	 * gathering write.
+	 *
+	 * @return whether any message was written
+	 */
+	private boolean writeSpilled(final ByteBuffer[] batch, final Spilled[] written) throws IOException {
+		var n = 0;
+		var remaining = 0L;
+		// A spilled message follows every slot claimed before it.
+		for (Spilled message; n < BATCH && (message = spill.peek()) != null && consumed >= message.after; n++) {
+			spill.poll();
+			written[n] = message;
+			batch[n] = ByteBuffer.wrap(message.bytes);
+			remaining += message.bytes.length;
+		}
+		if (n == 0) return false;
+		while (remaining > 0) remaining -= channel.write(batch, 0, n);
+		for (var i = 0; i < n; i++) {
+			written[i].written = true;
+			written[i] = null;
+		}
+		spillWritten += n;
+		return true;
+	}
+
+	private boolean isPublished(final long seq) {
+		return published.get((int) seq & (slots.length - 1)) == (int) (seq >>> bits);
+	}
+
+	/**
+	 * Write the slots of a run of sequences with gathering writes.
+	 */
+	private void write(final ByteBuffer[] batch, final long from, final long to) throws IOException {
+		final var n = (int) (to - from + 1);
+		final var mask = slots.length - 1;
+		for (var i = 0; i < n; i++) batch[i] = slots[(int) (from + i) & mask].flip();
+		var remaining = 0L;
+		for (var i = 0; i < n; i++) remaining += batch[i].remaining();
+		while (remaining > 0) remaining -= channel.write(batch, 0, n);
+	}
+
+	/**
+	 * Wait for messages as the strategy dictates.
+	 *
+	 * @param idle number of times in a row nothing was found
+	 *
+	 * @return the next number of idle rounds
+	 */
+	private int idle(final int idle) throws InterruptedException {
+		switch (wait) {
+			case BUSY_SPIN:
+				Thread.onSpinWait();
+				return idle;
+			case YIELDING:
+				if (idle < SPINS) Thread.onSpinWait();
+				else Thread.yield();
+				return idle + 1;
+			case SLEEPING:
+				if (idle < SPINS) Thread.onSpinWait();
+				else if (idle < 2 * SPINS) Thread.yield();
+				else LockSupport.parkNanos(PARK_NANOS);
+				return idle + 1;
+			default:
+				lock.lock();
+				try {
+					waiting = true;
+					if (claimed.get() == consumed && spill.isEmpty() && !closed) ready.awaitNanos(BLOCK_NANOS);
+				} finally {
+					waiting = false;
+					lock.unlock();
+				}
+				return idle + 1;
+		}
+	}
+
+	/**
+	 * A message which took the spill path.
+	 */
+	private static final class Spilled {
+
+		/** The encoded message. */
+		final byte[] bytes;
+
+		/** Last sequence claimed before the message was spilled. */
+		final long after;
+
+		/** Whether the message is in the file. */
+		volatile boolean written;
+
+		Spilled(final byte[] bytes, final long after) {
+			this.bytes = bytes;
+			this.after = after;
+		}
+	}
+
+	/**
+	 * Wait Strategy of the background thread.
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public enum Wait {
+
+		/** Wait on a lock until a producer signals; lowest CPU use. */
+		BLOCKING,
+
+		/** Spin, then yield, then park for short periods. */
+		SLEEPING,
+
+		/** Spin, then yield; low latency, keeps a core busy. */
+		YIELDING,
+
+		/** Spin; lowest latency, takes a whole core. */
+		BUSY_SPIN
+	}
+
+	/**
+	 * Overflow Policy, when the ring is full.
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public enum Overflow {
+
+		/** Wait for a free slot. */
+		BLOCK,
+
+		/** Drop the message and count it. */
+		DROP,
+
+		/** Queue the message on the heap, without bound. */
+		SPILL
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel byte pattern search.
+ *
+ * <p>Runs a Boyer-Moore-Horspool search over mapped chunks of a file. Each
+ * chunk owns the matches which start inside it and reads up to the length of
+ * the pattern past its end, so matches across chunk boundaries are found
+ * once. When line numbers are wanted, each chunk also counts its line feeds
+ * and the counts of the previous chunks are added while merging.</p>
+ *
+ * <p>When only the first match is wanted, the chunks are searched from the
+ * start of the file first, and every chunk stops as soon as a match is known
+ * before the bytes it has left, so a match near the start does not read the
+ * whole file.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class SearchTask extends RecursiveTask<SearchTask.Hits> {
+
+	private static final long serialVersionUID = 4476512237620133245L;
+
+	/** Chunks of this size or smaller are searched by a single task. */
+	private static final long CHUNK = 1L << 24;
+
+	/** Bytes searched between two checks of {@link #found}. */
+	private static final int STRIDE = 1 << 16;
+
+	/** The channel of the file. */
+	private final transient FileChannel channel;
+
+	/** The pattern. */
+	private final byte[] pattern;
+
+	/** Shift of each byte value. */
+	private final int[] skip;
+
+	/** Size of the file. */
+	private final long size;
+
+	/** Whether only the first match is wanted. */
+	private final boolean first;
+
+	/** First byte of the chunk. */
+	private final long from;
+
+	/** End of the chunk, exclusive. */
+	private final long to;
+
+	/** Offset of the earliest match found by any chunk so far. */
+	private final transient AtomicLong found;
+
+	/**
+	 * Create a task which searches a whole file.
+	 *
+	 * @param channel the channel of the file
+	 * @param pattern the bytes to find, not empty
+	 * @param first   whether to stop at the first match, without counting
+	 *                lines
+	 *
+	 * @throws IOException if the size of the file can't be read
+	 */
+	SearchTask(final FileChannel channel, final byte[] pattern, final boolean first) throws IOException {
+		this(channel, pattern, table(pattern), channel.size(), first, 0, channel.size(), new AtomicLong(Long.MAX_VALUE));
+	}
+
+	private SearchTask(final FileChannel channel, final byte[] pattern, final int[] skip, final long size, final boolean first, final long from, final long to, final AtomicLong found) {
+		this.channel = channel;
+		this.pattern = pattern;
+		this.skip = skip;
+		this.size = size;
+		this.first = first;
+		this.from = from;
+		this.to = to;
+		this.found = found;
+	}
+
+	/**
+	 * Build the bad character shift table of a pattern.
+	 */
+	private static int[] table(final byte[] pattern) {
+		var ret = new int[256];
+		Arrays.fill(ret, pattern.length);
+		for (var i = 0; i < pattern.length - 1; i++) ret[pattern[i] & 0xFF] = pattern.length - 1 - i;
+		return ret;
+	}
+
+	@Override
+	protected Hits compute() {
+		if (first && found.get() < from) return new Hits();
+		if (to - from <= CHUNK) return search();
+		var mid = from + (to - from) / 2;
+		var left = new SearchTask(channel, pattern, skip, size, first, from, mid, found);
+		var right = new SearchTask(channel, pattern, skip, size, first, mid, to, found);
+		if (first) {
+			// Search the start of the file on this thread, leave the rest to thieves.
+			right.fork();
+			var hits = left.compute();
+			return hits.merge(right.join(), true);
+		}
+		left.fork();
+		return left.join().merge(right.compute(), false);
+	}
+
+	private Hits search() {
+		var hits = new Hits();
+		var m = pattern.length;
+		var end = Math.min(size, to + m - 1);
+		if (end <= from) return hits;
+		try {
+			var map = channel.map(FileChannel.MapMode.READ_ONLY, from, end - from);
+			var last = pattern[m - 1];
+			var span = (int) (to - from);
+			var limit = (int) (end - from) - m;
+			var counted = 0;
+			var check = STRIDE;
+			for (var at = 0; at <= limit && at < span; ) {
+				if (first && at >= check) {
+					if (found.get() < from + at) return hits;
+					check = at + STRIDE;
+				}
+				var b = map.get(at + m - 1);
+				if (b == last && matches(map, at)) {
+					if (!first) counted = lines(hits, map, counted, at);
+					hits.add(from + at, hits.newlines);
+					if (first) {
+						found.accumulateAndGet(from + at, Math::min);
+						return hits;
+					}
+				}
+				at += skip[b & 0xFF];
+			}
+			if (!first) lines(hits, map, counted, span);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return hits;
+	}
+
+	private boolean matches(final MappedByteBuffer map, final int at) {
+		for (var i = pattern.length - 2; i >= 0; i--) if (map.get(at + i) != pattern[i]) return false;
+		return true;
+	}
+
+	/**
+	 * Count the line feeds of the chunk between two offsets.
+	 *
+	 * @return the end offset
+	 */
+	private static int lines(final Hits hits, final MappedByteBuffer map, final int from, final int to) {
+		for (var i = from; i < to; i++) if (map.get(i) == '\n') hits.newlines++;
+		return to;
+	}
+
+	/**
+	 * Matches of a chunk.
+	 */
+	static final class Hits {
+
+		/** Byte offset of each match. */
+		long[] offsets = new long[8];
+
+		/** Line of each match, counting from the start of the chunk. */
+		long[] lines = new long[8];
+
+		/** Number of matches. */
+		int count;
+
+		/** Number of line feeds in the chunk. */
+		long newlines;
+
+		private void add(final long offset, final long line) {
+			if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+				lines = Arrays.copyOf(lines, count * 2);
+			}
+			offsets[count] = offset;
+			lines[count++] = line;
+		}
+
+		/**
+		 * Append the matches of the following chunk.
+		 *
+		 * @param next  the matches of the chunk right after this one
+		 * @param first whether only the first match is wanted
+		 *
+		 * @return the merged matches
+		 */
+		Hits merge(final Hits next, final boolean first) {
+			if (first) return count > 0 ? this : next;
+			for (var i = 0; i < next.count; i++) add(next.offsets[i], newlines + next.lines[i]);
+			newlines += next.newlines;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel term frequency counter.
+ *
+ * <p>Scans mapped chunks of an ASCII-compatible file without decoding it.
+ * Terms are runs of bytes which are not delimiters; each chunk owns the
+ * terms which start inside it and reads past its end to finish the last
+ * one. Every chunk counts into its own table, keyed by a 64-bit hash of the
+ * bytes of each term, which keeps the bytes themselves in a single array;
+ * tables are merged as the tasks join.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class TermTask extends RecursiveTask<TermTask.Table> {
+
+	private static final long serialVersionUID = 2318250713963412917L;
+
+	/** Chunks of this size or smaller are scanned by a single task. */
+	private static final long CHUNK = 1L << 24;
+
+	/** The channel of the file. */
+	private final transient FileChannel channel;
+
+	/** Whether each byte value is a delimiter. */
+	private final boolean[] delimiters;
+
+	/** Size of the file. */
+	private final long size;
+
+	/** First byte of the chunk. */
+	private final long from;
+
+	/** End of the chunk, exclusive. */
+	private final long to;
+
+	/**
+	 * Create a task which counts the terms of a whole file.
+	 *
+	 * @param channel    the channel of the file
+	 * @param delimiters whether each byte value separates terms
+	 *
+	 * @throws IOException if the size of the file can't be read
+	 */
+	TermTask(final FileChannel channel, final boolean[] delimiters) throws IOException {
+		this(channel, delimiters, channel.size(), 0, channel.size());
+	}
+
+	private TermTask(final FileChannel channel, final boolean[] delimiters, final long size, final long from, final long to) {
+		this.channel = channel;
+		this.delimiters = delimiters;
+		this.size = size;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Build the delimiter table of a charset.
+	 *
+	 * <p>The predicate is asked about ASCII chars, and about every byte value
+	 * in ISO-8859-1, where bytes are chars; other bytes are never
+	 * delimiters, so multibyte chars stay inside terms.</p>
+	 *
+	 * @param charset   an ASCII-compatible charset
+	 * @param delimiter whether a char separates terms
+	 *
+	 * @return whether each byte value is a delimiter
+	 */
+	static boolean[] delimiters(final Charset charset, final java.util.function.IntPredicate delimiter) {
+		final var ret = new boolean[256];
+		final var n = java.nio.charset.StandardCharsets.ISO_8859_1.equals(charset) ? 256 : 128;
+		for (var c = 0; c < n; c++) ret[c] = delimiter.test(c);
+		return ret;
+	}
+
+	@Override
+	protected Table compute() {
+		if (to - from <= CHUNK) return scan();
+		var mid = from + (to - from) / 2;
+		var left = new TermTask(channel, delimiters, size, from, mid);
+		left.fork();
+		var right = new TermTask(channel, delimiters, size, mid, to).compute();
+		return left.join().merge(right);
+	}
+
+	private Table scan() {
+		var table = new Table();
+		if (from == to) return table;
+		try {
+			var map = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+			var span = (int) (to - from);
+			var at = 0;
+			// A term running into the chunk belongs to the previous one.
+			if (from > 0 && !delimiters[read(from - 1) & 0xFF]) while (at < span && !delimiters[map.get(at) & 0xFF]) at++;
+			var term = new byte[64];
+			var n = 0;
+			var hash = Table.SEED;
+			for (; at < span; at++) {
+				var b = map.get(at);
+				if (delimiters[b & 0xFF]) {
+					if (n > 0) table.add(Table.finish(hash), term, 0, n, 1);
+					n = 0;
+					hash = Table.SEED;
+					continue;
+				}
+				if (n == term.length) term = Arrays.copyOf(term, n * 2);
+				term[n++] = b;
+				hash = (hash ^ (b & 0xFF)) * Table.PRIME;
+			}
+			if (n > 0 && to < size) {
+				// Finish the last term past the end of the chunk.
+				var buf = ByteBuffer.allocate(1 << 16);
+				for (var pos = to; pos < size; pos += buf.limit()) {
+					buf.clear();
+					if (channel.read(buf, pos) <= 0) break;
+					buf.flip();
+					var i = 0;
+					for (; i < buf.limit(); i++) {
+						var b = buf.get(i);
+						if (delimiters[b & 0xFF]) break;
+						if (n == term.length) term = Arrays.copyOf(term, n * 2);
+						term[n++] = b;
+						hash = (hash ^ (b & 0xFF)) * Table.PRIME;
+					}
+					if (i < buf.limit()) break;
+				}
+			}
+			if (n > 0) table.add(Table.finish(hash), term, 0, n, 1);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return table;
+	}
+
+	private byte read(final long pos) throws IOException {
+		var buf = ByteBuffer.allocate(1);
+		while (buf.hasRemaining()) if (channel.read(buf, pos) < 0) throw new java.io.EOFException();
+		return buf.get(0);
+	}
+
+	/**
+	 * Term counts, with open addressing.
+	 */
+	static final class Table {
+
+		/** Initial hash of a term, FNV-1a. */
+		static final long SEED = 0xCBF29CE484222325L;
+
+		/** Multiplier of each byte, FNV-1a. */
+		static final long PRIME = 0x100000001B3L;
+
+		/** Hashes, {@code 0} in free slots. */
+		private long[] hashes = new long[1 << 10];
+
+		/** Offset of each term in {@link #bytes}. */
+		private int[] starts = new int[hashes.length];
+
+		/** Length of each term. */
+		private int[] lengths = new int[hashes.length];
+
+		/** Occurrences of each term. */
+		private long[] counts = new long[hashes.length];
+
+		/** Bytes of the terms. */
+		private byte[] bytes = new byte[1 << 12];
+
+		/** Bytes used of {@link #bytes}. */
+		private int used;
+
+		/** Number of distinct terms. */
+		int size;
+
+		/** Number of terms. */
+		long total;
+
+		/**
+		 * Mix the bits of an FNV hash, so the low ones can index the table.
+		 */
+		static long finish(final long hash) {
+			var h = hash;
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			return h == 0 ? 1 : h;
+		}
+
+		/**
+		 * Count occurrences of a term.
+		 */
+		void add(final long hash, final byte[] term, final int off, final int len, final long n) {
+			total += n;
+			var mask = hashes.length - 1;
+			var i = (int) hash & mask;
+			for (; hashes[i] != 0; i = (i + 1) & mask) {
+				if (hashes[i] == hash && Arrays.equals(bytes, starts[i], starts[i] + lengths[i], term, off, off + len)) {
+					counts[i] += n;
+					return;
+				}
+			}
+			if (used + len > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, used + len));
+			System.arraycopy(term, off, bytes, used, len);
+			hashes[i] = hash;
+			starts[i] = used;
+			lengths[i] = len;
+			counts[i] = n;
+			used += len;
+			if (++size > hashes.length / 2) grow();
+		}
+
+		private void grow() {
+			final var oldHashes = hashes;
+			final var oldStarts = starts;
+			final var oldLengths = lengths;
+			final var oldCounts = counts;
+			final var capacity = oldHashes.length * 2;
+			hashes = new long[capacity];
+			starts = new int[capacity];
+			lengths = new int[capacity];
+			counts = new long[capacity];
+			final var mask = capacity - 1;
+			for (var k = 0; k < oldHashes.length; k++) {
+				if (oldHashes[k] == 0) continue;
+				var i = (int) oldHashes[k] & mask;
+				while (hashes[i] != 0) i = (i + 1) & mask;
+				hashes[i] = oldHashes[k];
+				starts[i] = oldStarts[k];
+				lengths[i] = oldLengths[k];
+				counts[i] = oldCounts[k];
+			}
+		}
+
+		/**
+		 * Add the counts of another table, total included.
+		 *
+		 * @param other the table to add
+		 *
+		 * @return the merged table, this one or {@code other}
+		 */
+		Table merge(final Table other) {
+			if (other.size > size) return other.merge(this);
+			for (var k = 0; k < other.hashes.length; k++) {
+				if (other.hashes[k] != 0) add(other.hashes[k], other.bytes, other.starts[k], other.lengths[k], other.counts[k]);
+			}
+			return this;
+		}
+
+		/**
+		 * Returns the most frequent terms.
+		 *
+		 * <p>Terms with the same count are ordered by their bytes, which is
+		 * the order of their text in every supported charset, both to choose
+		 * the ones kept and to return them.</p>
+		 *
+		 * @param k       the number of terms
+		 * @param charset the charset of the terms
+		 *
+		 * @return up to {@code k} terms, the most frequent first
+		 */
+		List<TextFile.Term> top(final int k, final Charset charset) {
+			final var heap = new PriorityQueue<Integer>(Math.max(k, 1), (a, b) -> rank(b, a));
+			for (var i = 0; i < hashes.length && k > 0; i++) {
+				if (hashes[i] == 0) continue;
+				if (heap.size() < k) heap.add(i);
+				else if (rank(i, heap.peek()) < 0) {
+					heap.poll();
+					heap.add(i);
+				}
+			}
+			final var order = new ArrayList<>(heap);
+			order.sort(this::rank);
+			final var ret = new ArrayList<TextFile.Term>(order.size());
+			for (var i : order) ret.add(new TextFile.Term(new String(bytes, starts[i], lengths[i], charset), counts[i], total));
+			return ret;
+		}
+
+		/**
+		 * Compare two terms, the most frequent first and then by their bytes.
+		 */
+		private int rank(final int a, final int b) {
+			if (counts[a] != counts[b]) return Long.compare(counts[b], counts[a]);
+			return Arrays.compareUnsigned(bytes, starts[a], starts[a] + lengths[a], bytes, starts[b], starts[b] + lengths[b]);
+		}
+	}
+}
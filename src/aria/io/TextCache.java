@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Shared Text Cache.
+ *
+ * <p>Process-wide cache of decoded file contents, weighted by their size in
+ * memory. An entry is keyed by the absolute path and the charset of a file
+ * and is only served while the length and the modification time of the file
+ * stay the same.</p>
+ *
+ * <p>The cache is split in shards, each one guarded by its own lock, so
+ * threads reading different files rarely contend. Every shard is a segmented
+ * LRU: new entries go to a probation segment and move to a protected one
+ * when read again, so a single scan over many files can only evict other
+ * entries on probation.</p>
+ *
+ * <p>Each shard holds a sixteenth of the budget, and contents which don't
+ * fit in a shard are never cached: with the default budget of 64 MB, files
+ * whose decoded contents take more than 4 MB, about two million chars, are
+ * always read from disk. Raise the budget to cache larger files.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+public final class TextCache {
+
+	/** Number of shards, a power of two. */
+	private static final int SHARDS = 16;
+
+	/** Share of a shard budget kept for protected entries, in percent. */
+	private static final int PROTECTED = 80;
+
+	/** Memory taken by an entry besides its chars. */
+	private static final long OVERHEAD = 128;
+
+	/** The shards. */
+	private static final Shard[] SHARD = new Shard[SHARDS];
+
+	/** Number of lookups served from the cache. */
+	private static final LongAdder HITS = new LongAdder();
+
+	/** Number of lookups which had to read the file. */
+	private static final LongAdder MISSES = new LongAdder();
+
+	/** Number of entries evicted to honor the budget. */
+	private static final LongAdder EVICTIONS = new LongAdder();
+
+	/** Maximum memory taken by the cached contents. */
+	private static volatile long budget;
+
+	static {
+		for (var i = 0; i < SHARDS; i++) SHARD[i] = new Shard();
+		setBudget(64L << 20);
+	}
+
+	private TextCache() {}
+
+	/**
+	 * Returns the maximum memory taken by the cached contents.
+	 *
+	 * @return the budget of the cache, in bytes
+	 */
+	public static long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Redefine the maximum memory taken by the cached contents.
+	 *
+	 * <p>Entries are evicted right away if the cache is over the new budget.
+	 * Contents larger than a sixteenth of the budget, the share of a single
+	 * shard, are never cached.</p>
+	 *
+	 * @param bytes the new budget of the cache, in bytes
+	 */
+	public static void setBudget(final long bytes) {
+		budget = Math.max(bytes, 0);
+		for (var v : SHARD) v.resize(budget / SHARDS);
+	}
+
+	/**
+	 * Returns the number of lookups served from the cache.
+	 *
+	 * @return the number of hits
+	 */
+	public static long getHits() {
+		return HITS.sum();
+	}
+
+	/**
+	 * Returns the number of lookups which had to read the file.
+	 *
+	 * @return the number of misses
+	 */
+	public static long getMisses() {
+		return MISSES.sum();
+	}
+
+	/**
+	 * Returns the number of entries evicted to honor the budget.
+	 *
+	 * @return the number of evictions
+	 */
+	public static long getEvictions() {
+		return EVICTIONS.sum();
+	}
+
+	/**
+	 * Returns the memory taken by the cached contents.
+	 *
+	 * @return the weight of the cache, in bytes
+	 */
+	public static long getWeight() {
+		var ret = 0L;
+		for (var v : SHARD) ret += v.weight();
+		return ret;
+	}
+
+	/**
+	 * Remove every entry.
+	 */
+	public static void clear() {
+		for (var v : SHARD) v.clear();
+	}
+
+	/**
+	 * Remove the entries of a file.
+	 *
+	 * @param file the file
+	 */
+	static void invalidate(final java.io.File file) {
+		final var path = file.getAbsolutePath();
+		shard(path).removeIf(path);
+	}
+
+	/**
+	 * Returns the contents of a file, reading them on a miss.
+	 *
+	 * @param file    the file
+	 * @param charset the charset name of the file
+	 * @param loader  reads the contents of the file
+	 *
+	 * @return the contents of the file
+	 */
+	static String get(final java.io.File file, final String charset, final Supplier<String> loader) {
+		final var key = new Key(file.getAbsolutePath(), charset);
+		final var shard = shard(key.path);
+		final var modified = file.lastModified();
+		final var length = file.length();
+		final var hit = shard.get(key, modified, length);
+		if (hit != null) {
+			HITS.increment();
+			return hit.contents;
+		}
+		MISSES.increment();
+		final var contents = loader.get();
+		shard.put(key, new Entry(contents, modified, length));
+		return contents;
+	}
+
+	/**
+	 * Returns the shard holding the entries of a path.
+	 */
+	private static Shard shard(final String path) {
+		final var h = path.hashCode();
+		return SHARD[(h ^ (h >>> 16)) & (SHARDS - 1)];
+	}
+
+	/**
+	 * Cache key.
+	 */
+	private static final class Key {
+
+		final String path;
+
+		final String charset;
+
+		Key(final String path, final String charset) {
+			this.path = path;
+			this.charset = charset;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Key)) return false;
+			final var k = (Key) o;
+			return path.equals(k.path) && charset.equals(k.charset);
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode() * 31 + charset.hashCode();
+		}
+	}
+
+	/**
+	 * Cached contents of a file.
+	 */
+	private static final class Entry {
+
+		final String contents;
+
+		final long modified;
+
+		final long length;
+
+		final long weight;
+
+		Entry(final String contents, final long modified, final long length) {
+			this.contents = contents;
+			this.modified = modified;
+			this.length = length;
+			weight = OVERHEAD + 2L * contents.length();
+		}
+	}
+
+	/**
+	 * Segmented LRU shard.
+	 */
+	private static final class Shard {
+
+		/** Entries read once, least recently used first. */
+		private final LinkedHashMap<Key, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+		/** Entries read again, least recently used first. */
+		private final LinkedHashMap<Key, Entry> protect = new LinkedHashMap<>(16, 0.75f, true);
+
+		private long probationWeight;
+
+		private long protectedWeight;
+
+		private long capacity;
+
+		/**
+		 * Returns a fresh entry, promoting it if it was on probation.
+		 *
+		 * <p>An entry which no longer matches its file is removed before it
+		 * can be promoted, so it never takes the place of fresh ones.</p>
+		 */
+		synchronized Entry get(final Key key, final long modified, final long length) {
+			var e = probation.get(key);
+			if (e == null) e = protect.get(key);
+			if (e == null) return null;
+			if (e.modified != modified || e.length != length) {
+				remove(key);
+				return null;
+			}
+			if (probation.remove(key) == null) return e;
+			probationWeight -= e.weight;
+			protect.put(key, e);
+			protectedWeight += e.weight;
+			demote();
+			return e;
+		}
+
+		synchronized void put(final Key key, final Entry entry) {
+			remove(key);
+			if (entry.weight > capacity) return;
+			probation.put(key, entry);
+			probationWeight += entry.weight;
+			evict();
+		}
+
+		synchronized void resize(final long capacity) {
+			this.capacity = capacity;
+			demote();
+			evict();
+		}
+
+		synchronized long weight() {
+			return probationWeight + protectedWeight;
+		}
+
+		synchronized void clear() {
+			probation.clear();
+			protect.clear();
+			probationWeight = protectedWeight = 0;
+		}
+
+		synchronized void removeIf(final String path) {
+			for (var it = probation.entrySet().iterator(); it.hasNext(); ) {
+				final var e = it.next();
+				if (!e.getKey().path.equals(path)) continue;
+				probationWeight -= e.getValue().weight;
+				it.remove();
+			}
+			for (var it = protect.entrySet().iterator(); it.hasNext(); ) {
+				final var e = it.next();
+				if (!e.getKey().path.equals(path)) continue;
+				protectedWeight -= e.getValue().weight;
+				it.remove();
+			}
+		}
+
+		private void remove(final Key key) {
+			var e = probation.remove(key);
+			if (e != null) probationWeight -= e.weight;
+			e = protect.remove(key);
+			if (e != null) protectedWeight -= e.weight;
+		}
+
+		/**
+		 * Move the least recently used protected entries back to probation.
+		 */
+		private void demote() {
+			final var limit = capacity * PROTECTED / 100;
+			for (var it = protect.entrySet().iterator(); protectedWeight > limit && it.hasNext(); ) {
+				final var e = it.next();
+				it.remove();
+				protectedWeight -= e.getValue().weight;
+				probation.put(e.getKey(), e.getValue());
+				probationWeight += e.getValue().weight;
+			}
+		}
+
+		/**
+		 * Evict entries on probation, then protected ones, until the shard fits.
+		 */
+		private void evict() {
+			for (var it = probation.values().iterator(); weight() > capacity && it.hasNext(); ) {
+				probationWeight -= it.next().weight;
+				it.remove();
+				EVICTIONS.increment();
+			}
+			for (var it = protect.values().iterator(); weight() > capacity && it.hasNext(); ) {
+				protectedWeight -= it.next().weight;
+				it.remove();
+				EVICTIONS.increment();
+			}
+		}
+	}
+}
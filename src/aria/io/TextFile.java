@@ -37,6 +37,24 @@ public class TextFile extends File implements TextFileInterface {
 	/** Default encoding. */
 	private String encoding = UTF_8;
 
+	/** How the contents of this file are read. */
+	private ReadMode readMode = ReadMode.AUTO;
+
+	/** Distance between char offset checkpoints, in KB; {@code 0} disables them. */
+	private int checkpoints;
+
+	/** Whether the contents of this file are kept in the shared cache. */
+	private boolean cached;
+
+	/** The char offset index last used. */
+	private transient CharIndex index;
+
+	/** The line offset index last used. */
+	private transient LineIndex lineIndex;
+
+	/** The cursor kept open between positional reads, guarded by this file. */
+	private transient Cursor idle;
+
 	/**
 	 * Initialize a File from a path.
 	 *
@@ -122,13 +140,153 @@ public class TextFile extends File implements TextFileInterface {
 		return UTF_8;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>Any charset supported by this JVM is accepted; unknown names fall
+	 * back to UTF-8.</p>
+	 */
 	@Override
 	public void setEncoding(final String encoding) {
-		this.encoding = ASCII.equals(encoding) ? ASCII : UTF_8;
+		this.encoding = encoding != null && isSupported(encoding) ? encoding : UTF_8;
+	}
+
+	/**
+	 * Redefine the current file encoding.
+	 *
+	 * @param charset the new file charset
+	 */
+	public void setEncoding(final java.nio.charset.Charset charset) {
+		encoding = charset == null ? UTF_8 : charset.name();
+	}
+
+	/**
+	 * Returns the current file charset.
+	 *
+	 * @return the charset of the current file encoding
+	 */
+	public java.nio.charset.Charset getCharset() {
+		return java.nio.charset.Charset.forName(encoding);
+	}
+
+	private static boolean isSupported(final String encoding) {
+		try {
+			return java.nio.charset.Charset.isSupported(encoding);
+		} catch (IllegalArgumentException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns how the contents of this file are read.
+	 *
+	 * @return the current read mode
+	 */
+	public ReadMode getReadMode() {
+		return readMode;
+	}
+
+	/**
+	 * Redefine how the contents of this file are read.
+	 *
+	 * @param readMode the new read mode
+	 */
+	public void setReadMode(final ReadMode readMode) {
+		this.readMode = readMode == null ? ReadMode.AUTO : readMode;
+	}
+
+	/**
+	 * Returns the distance between char offset checkpoints.
+	 *
+	 * @return the distance between checkpoints in KB, {@code 0} if disabled
+	 */
+	public int getCheckpoints() {
+		return checkpoints;
+	}
+
+	/**
+	 * Redefine the distance between char offset checkpoints.
+	 *
+	 * <p>When enabled, mapped reads at a char offset seek to the nearest
+	 * checkpoint instead of decoding every char before it. The checkpoints are
+	 * stored in a hidden sidecar next to this file and rebuilt whenever the
+	 * length or the modification time of this file changes. Only charsets
+	 * which can be decoded from any checkpoint are indexed: ASCII,
+	 * ISO-8859-1, UTF-8, UTF-16BE and UTF-16LE. UTF-16 with a byte order mark
+	 * is not.</p>
+	 *
+	 * @param kilobytes the distance between checkpoints in KB, {@code 0} to
+	 *                  disable them
+	 */
+	public void setCheckpoints(final int kilobytes) {
+		checkpoints = Math.max(kilobytes, 0);
+		index = null;
+	}
+
+	/**
+	 * Move a decoder of this file near the specified char offset.
+	 *
+	 * @param text    the decoder
+	 * @param charset the charset of this file
+	 * @param ofs     the wanted char offset
+	 *
+	 * @return the char offset the decoder was moved to
+	 *
+	 * @throws java.io.IOException if the index can't be built
+	 */
+	private long seek(final MappedText text, final java.nio.charset.Charset charset, final long ofs) throws java.io.IOException {
+		if (ofs <= 0 || checkpoints <= 0 || !CharIndex.supports(charset)) return 0;
+		index = CharIndex.of(this, charset, checkpoints << 10, index);
+		return index.seek(text, ofs);
+	}
+
+	/**
+	 * Check whether the contents of this file are read through a mapping.
+	 *
+	 * @return {@code true} if this file is read through a mapping
+	 */
+	private boolean isMapped() {
+		if (readMode == ReadMode.AUTO) return length() >= MappedText.THRESHOLD;
+		return readMode == ReadMode.MAPPED;
+	}
+
+	/**
+	 * Read chars from this file through a mapping.
+	 *
+	 * @param ofs    offset to start reading
+	 * @param length maximum number of chars, or {@code 0} to read everything
+	 * @param enc    encoding name
+	 *
+	 * @return the chars read
+	 */
+	private char[] readMapped(final long ofs, final int length, final String enc) {
+		final var charset = java.nio.charset.Charset.forName(enc);
+		try (var text = new MappedText(toPath(), charset)) {
+			text.skip(ofs - seek(text, charset, ofs));
+			return text.read(length);
+		} catch (java.io.IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return new char[0];
+		}
 	}
 
 	@Override
 	public int[] read(final int ofs, final int length, final String enc) {
+		if (cached) return aria.util.Prima.toInts(readCached(ofs, length, enc).toCharArray());
+		if (isMapped()) return aria.util.Prima.toInts(readMapped(ofs, length, enc));
+		return readStream(ofs, length, enc);
+	}
+
+	/**
+	 * Read chars from this file through a {@code BufferedReader}.
+	 *
+	 * @param ofs    offset to start reading
+	 * @param length maximum number of chars, or {@code 0} to read everything
+	 * @param enc    encoding name
+	 *
+	 * @return array of {@code int} with char code points
+	 */
+	private int[] readStream(final int ofs, final int length, final String enc) {
 		final var list = new java.util.ArrayList<Integer>();
 		try (
 			var fis = new java.io.FileInputStream(getAbsoluteFile());
@@ -149,229 +307,1969 @@ public class TextFile extends File implements TextFileInterface {
 	}
 
 	@Override
-	public boolean write(final String enc, final String... parts) {
-		try (var fos = new java.io.FileOutputStream(getAbsoluteFile()); var osw = new java.io.OutputStreamWriter(fos, enc); var out = new java.io.BufferedWriter(osw)) {
-			out.write(String.join("", parts));
-			return true;
-		} catch (java.io.IOException ex) {
+	public String reads(final int ofs, final int length, final String enc) {
+		if (cached) return readCached(ofs, length, enc);
+		if (isMapped()) return new String(readMapped(ofs, length, enc));
+		return new String(aria.util.Prima.toChars(readStream(ofs, length, enc)));
+	}
+
+	/**
+	 * Read data from this file without blocking the calling thread.
+	 *
+	 * @param ofs    offset to start reading
+	 * @param length length of returning array, or {@code 0} to read everything
+	 * @param enc    encoding name
+	 *
+	 * @return array of {@code int} with char code points, once read
+	 *
+	 * @see AsyncIO
+	 */
+	public java.util.concurrent.CompletableFuture<int[]> readAsync(final int ofs, final int length, final String enc) {
+		return readsAsync(ofs, length, enc).thenApply(v -> aria.util.Prima.toInts(v.toCharArray()));
+	}
+
+	/**
+	 * Read data from this file without blocking the calling thread.
+	 *
+	 * @param ofs    offset to start reading
+	 * @param length length of the returning String, or {@code 0} to read
+	 *               everything
+	 * @param enc    encoding name
+	 *
+	 * @return String representation of the data in this file, once read
+	 *
+	 * @see AsyncIO
+	 */
+	public java.util.concurrent.CompletableFuture<String> readsAsync(final int ofs, final int length, final String enc) {
+		try {
+			return AsyncIO.read(this, java.nio.charset.Charset.forName(enc), ofs, length);
+		} catch (IllegalArgumentException ex) {
 			System.err.println(ex.getMessage());
-			return false;
+			return java.util.concurrent.CompletableFuture.completedFuture("");
 		}
 	}
-}
-
 
-/**
- * Text File Interface.
- *
- * @author  Alejandro Elí
- * @version 24/05/20
- * @since   1.0
- */
-interface TextFileInterface {
+	/**
+	 * Read this file without blocking the calling thread, using current
+	 * encoding.
+	 *
+	 * @return String representation of the data in this file, once read
+	 *
+	 * @see #readsAsync(int, int, String)
+	 */
+	public java.util.concurrent.CompletableFuture<String> readsAsync() {
+		return readsAsync(0, 0, getCurrentEncoding());
+	}
 
-	private static char[] toChars(int[] data) {
-		char[] ret = new char[data.length];
-		for (int i = 0; i < data.length; i++) {
-			ret[i] = (char) data[i];
-		}
-		return ret;
+	/**
+	 * Check whether the contents of this file are kept in the shared cache.
+	 *
+	 * @return {@code true} if the contents of this file are cached
+	 */
+	public boolean isCached() {
+		return cached;
 	}
 
 	/**
-	 * Get the current file encoding.
+	 * Redefine whether the contents of this file are kept in the shared cache.
 	 *
-	 * @return the current file encoding
+	 * <p>When cached, reads decode the whole file once and serve every later
+	 * read from memory until the length or the modification time of this file
+	 * change.</p>
+	 *
+	 * @param cached {@code true} to cache the contents of this file
+	 *
+	 * @see TextCache
 	 */
-	String getCurrentEncoding();
+	public void setCached(final boolean cached) {
+		this.cached = cached;
+	}
 
 	/**
-	 * Get the default file encoding.
+	 * Read chars from the cached contents of this file.
+	 *
+	 * @param ofs    offset to start reading
+	 * @param length maximum number of chars, or {@code 0} to read everything
+	 * @param enc    encoding name
 	 *
-	 * @return the default file encoding
+	 * @return the chars read
 	 */
-	String getDefaultEncoding();
+	private String readCached(final int ofs, final int length, final String enc) {
+		final var all = TextCache.get(this, enc, () -> isMapped()
+			? new String(readMapped(0, 0, enc))
+			: new String(aria.util.Prima.toChars(readStream(0, 0, enc))));
+		final var from = Math.min(Math.max(ofs, 0), all.length());
+		final var to = length > 0 ? Math.min(all.length(), from + length) : all.length();
+		return all.substring(from, to);
+	}
 
 	/**
-	 * Redefine the current file encoding.
+	 * Returns a lazy stream of the lines of this file in the current encoding.
+	 *
+	 * <p>The stream holds the file open and should be closed, e.g. with a
+	 * try-with-resources statement.</p>
+	 *
+	 * @return the lines of this file, without line terminators
 	 *
-	 * @param encoding the new file encoding
+	 * @see #lines(String)
 	 */
-	void setEncoding(String encoding);
+	public java.util.stream.Stream<String> lines() {
+		return lines(getCurrentEncoding());
+	}
 
 	/**
-	 * Read data from this file.
+	 * Returns a lazy stream of the lines of this file.
+	 *
+	 * <p>Lines end with {@code \n} or {@code \r\n}. For ASCII, ISO-8859-1 and
+	 * UTF-8 files the stream splits on byte ranges lined up to line starts,
+	 * so {@code parallel()} spreads the work without reading the file first.
+	 * The stream holds the file open and should be closed, e.g. with a
+	 * try-with-resources statement.</p>
 	 *
-	 * @param ofs offset to start reading
-	 * @param len length of returning array
 	 * @param enc encoding name
 	 *
-	 * @return array of {@code int} with char code points
+	 * @return the lines of this file, without line terminators
+	 */
+	public java.util.stream.Stream<String> lines(final String enc) {
+		return lineViews(enc).map(CharSequence::toString);
+	}
+
+	/**
+	 * Returns a lazy stream of the lines of this file.
+	 *
+	 * @param charset the charset
+	 *
+	 * @return the lines of this file, without line terminators
+	 *
+	 * @see #lines(String)
 	 */
-	int[] read(int ofs, int len, String enc);
+	public java.util.stream.Stream<String> lines(final java.nio.charset.Charset charset) {
+		return lines(charset.name());
+	}
 
+	/**
+	 * Returns a line of this file, in the current encoding.
+	 *
+	 * @param n the line, counting from {@code 0}
+	 *
+	 * @return the line without its terminator, or {@code null} if there is
+	 *         no such line
+	 *
+	 * @see #lines(long, long)
+	 */
+	public String line(final long n) {
+		final var ret = lines(n, n + 1);
+		return ret.isEmpty() ? null : ret.get(0);
+	}
 
-	// * Reading
+	/**
+	 * Returns a range of lines of this file, in the current encoding.
+	 *
+	 * <p>ASCII, ISO-8859-1 and UTF-8 files are indexed on first use: the byte
+	 * offset of every line is kept in a hidden sidecar next to this file, so
+	 * any range is then read without decoding the lines before it. The index
+	 * is extended when this file grows and rebuilt when it changes in any
+	 * other way. Files in other charsets are read through
+	 * {@link #lines(String)}.</p>
+	 *
+	 * @param from the first line, counting from {@code 0}
+	 * @param to   the end of the range, exclusive
+	 *
+	 * @return the lines of the range which exist, without terminators
+	 */
+	public java.util.List<String> lines(final long from, final long to) {
+		if (from < 0 || to <= from) return java.util.List.of();
+		try {
+			final var charset = getCharset();
+			if (!LineSpliterator.supports(charset)) {
+				try (var stream = lines(charset.name())) {
+					return stream.skip(from).limit(to - from).collect(java.util.stream.Collectors.toList());
+				}
+			}
+			lineIndex = LineIndex.of(this, lineIndex);
+			final var last = Math.min(to, lineIndex.count());
+			if (from >= last) return java.util.List.of();
+			final var start = lineIndex.start(from);
+			final var size = lineIndex.start(last) - start;
+			if (size > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many bytes in lines " + from + " to " + last + ".");
+			final var bytes = java.nio.ByteBuffer.allocate((int) size);
+			try (var channel = java.nio.channels.FileChannel.open(toPath(), java.nio.file.StandardOpenOption.READ)) {
+				while (bytes.hasRemaining() && channel.read(bytes, start + bytes.position()) > 0) continue;
+			}
+			final var arr = bytes.array();
+			final var ret = new java.util.ArrayList<String>((int) (last - from));
+			for (var n = from; n < last; n++) {
+				final var a = (int) (lineIndex.start(n) - start);
+				var b = (int) Math.min(lineIndex.start(n + 1) - start, bytes.position());
+				if (b > a && arr[b - 1] == '\n') b--;
+				if (b > a && arr[b - 1] == '\r') b--;
+				ret.add(new String(arr, a, b - a, charset));
+			}
+			return ret;
+		} catch (java.io.IOException | java.io.UncheckedIOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return java.util.List.of();
+		}
+	}
 
 	/**
-	 * Read data from this file.
+	 * Returns a lazy stream of the lines of this file in the current encoding,
+	 * without copying them into Strings.
 	 *
-	 * @param ofs offset to start reading
-	 * @param len length of returning array
+	 * @return views over the lines of this file
 	 *
-	 * @return array of {@code int} with char code points
+	 * @see #lineViews(String)
 	 */
-	default int[] read(int ofs, int len) {
-		return read(ofs, len, getDefaultEncoding());
+	public java.util.stream.Stream<CharSequence> lineViews() {
+		return lineViews(getCurrentEncoding());
 	}
 
 	/**
-	 * Read data from this file.
+	 * Returns a lazy stream of the lines of this file, without copying them
+	 * into Strings.
+	 *
+	 * <p>Each line is a view over a buffer which is reused for the next line of
+	 * the same split; call {@code toString()} to keep it. Otherwise this method
+	 * behaves as {@link #lines(String)}.</p>
 	 *
-	 * @param len length of returning array
 	 * @param enc encoding name
 	 *
-	 * @return array of {@code int} with char code points
+	 * @return views over the lines of this file
 	 */
-	default int[] read(int len, String enc) {
-		return read(0, len, enc);
+	public java.util.stream.Stream<CharSequence> lineViews(final String enc) {
+		try {
+			return openLineViews(java.nio.charset.Charset.forName(enc));
+		} catch (java.io.IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return java.util.stream.Stream.empty();
+		}
 	}
 
 	/**
-	 * Read data from this file.
+	 * Open a lazy stream of the lines of this file.
 	 *
-	 * @param enc encoding name
-	 * @param ofs offset to start reading
+	 * @param charset the charset
 	 *
-	 * @return array of {@code int} with char code points
+	 * @return views over the lines of this file
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 */
+	private java.util.stream.Stream<CharSequence> openLineViews(final java.nio.charset.Charset charset) throws java.io.IOException {
+		if (!LineSpliterator.supports(charset)) {
+			final var in = new java.io.BufferedReader(new java.io.InputStreamReader(new java.io.FileInputStream(getAbsoluteFile()), charset));
+			return in.lines().map(CharSequence.class::cast).onClose(() -> {
+				try {
+					in.close();
+				} catch (java.io.IOException ex) {
+					System.err.println(ex.getMessage());
+				}
+			});
+		}
+		final var channel = java.nio.channels.FileChannel.open(toPath(), java.nio.file.StandardOpenOption.READ);
+		final var lines = new LineSpliterator(channel, charset, 0, channel.size());
+		return java.util.stream.StreamSupport.stream(lines, false).onClose(() -> {
+			try {
+				channel.close();
+			} catch (java.io.IOException ex) {
+				System.err.println(ex.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Returns a lazy stream of the lines of this file, without copying them
+	 * into Strings.
+	 *
+	 * @param charset the charset
+	 *
+	 * @return views over the lines of this file
+	 *
+	 * @see #lineViews(String)
+	 */
+	public java.util.stream.Stream<CharSequence> lineViews(final java.nio.charset.Charset charset) {
+		return lineViews(charset.name());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * <p>The cursor of the last read is kept open, so repeated positional
+	 * reads in the same charset reuse its mapping, and its checkpoints, until
+	 * this file changes. Concurrent reads open cursors of their own; a caller
+	 * which owns its reads should still prefer {@link #cursor(String)}.</p>
+	 */
+	@Override
+	public int read(final java.nio.CharBuffer dst, final long srcOfs, final String enc) {
+		Cursor cursor;
+		synchronized (this) {
+			cursor = idle;
+			idle = null;
+		}
+		try {
+			final var charset = java.nio.charset.Charset.forName(enc);
+			if (cursor != null && !cursor.isCurrent(charset)) {
+				cursor.close();
+				cursor = null;
+			}
+			if (cursor == null) cursor = new Cursor(this, charset);
+			final var ret = cursor.read(dst, srcOfs);
+			synchronized (this) {
+				final var kept = cursor;
+				cursor = idle;
+				idle = kept;
+			}
+			return ret;
+		} catch (java.io.IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return -1;
+		} finally {
+			try {
+				if (cursor != null) cursor.close();
+			} catch (java.io.IOException ex) {
+				System.err.println(ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Open a cursor over this file in the current encoding.
+	 *
+	 * @return a new cursor positioned at the start of this file
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see #cursor(String)
 	 */
-	default int[] read(String enc, int ofs) {
-		return read(ofs, 0, enc);
+	public Cursor cursor() throws java.io.IOException {
+		return cursor(getCurrentEncoding());
 	}
 
 	/**
-	 * Read data from this file.
+	 * Open a cursor over this file.
+	 *
+	 * <p>A cursor keeps this file mapped between reads, so sequential reads
+	 * into the same buffer allocate nothing. A cursor is meant to be owned by
+	 * a single thread.</p>
 	 *
 	 * @param enc encoding name
 	 *
-	 * @return array of {@code int} with char code points
+	 * @return a new cursor positioned at the start of this file
+	 *
+	 * @throws java.io.IOException if this file can't be opened
 	 */
-	default int[] read(String enc) {
-		return read(0, 0, enc);
+	public Cursor cursor(final String enc) throws java.io.IOException {
+		return new Cursor(this, java.nio.charset.Charset.forName(enc));
 	}
 
 	/**
-	 * Read data from this file.
+	 * Open a cursor over this file.
 	 *
-	 * @param len length of returning array
+	 * @param charset the charset
 	 *
-	 * @return array of {@code int} with char code points
+	 * @return a new cursor positioned at the start of this file
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see #cursor(String)
 	 */
-	default int[] read(int len) {
-		return read(0, len, getDefaultEncoding());
+	public Cursor cursor(final java.nio.charset.Charset charset) throws java.io.IOException {
+		return new Cursor(this, charset);
 	}
 
 	/**
-	 * Read data from this file.
+	 * Open a reader over the CSV records of this file in the current encoding.
 	 *
-	 * @return array of {@code int} with char code points
+	 * <p>Fields are separated by commas and may be quoted with {@code "}.</p>
+	 *
+	 * @return a new record reader, to be closed when no longer needed
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see #records(String, char, char, char)
 	 */
-	default int[] read() {
-		return read(0, 0, getDefaultEncoding());
+	public RecordReader records() throws java.io.IOException {
+		return records(getCurrentEncoding(), ',', '"', '\0');
 	}
 
 	/**
-	 * Read data from this file.
+	 * Open a reader over the delimited records of this file in the current
+	 * encoding.
 	 *
-	 * @param ofs offset to start reading
-	 * @param len length of the returning array
-	 * @param enc encoding name
+	 * @param delimiter the field delimiter, such as {@code ','} or
+	 *                  {@code '\t'}; fields may be quoted with {@code "}
+	 *
+	 * @return a new record reader, to be closed when no longer needed
 	 *
-	 * @return String representation of the data in this file.
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see #records(String, char, char, char)
 	 */
-	default String reads(int ofs, int len, String enc) {
-		return new String(toChars(read(ofs, len, enc)));
+	public RecordReader records(final char delimiter) throws java.io.IOException {
+		return records(getCurrentEncoding(), delimiter, '"', '\0');
 	}
 
+	/**
+	 * Open a reader over the delimited records of this file.
+	 *
+	 * @param enc       encoding name, ASCII, ISO-8859-1 or UTF-8
+	 * @param delimiter the field delimiter
+	 * @param quote     the quote, or {@code '\0'} if fields are not quoted
+	 * @param escape    the char which makes the next one plain, or
+	 *                  {@code '\0'} if there is none
+	 *
+	 * @return a new record reader, to be closed when no longer needed
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see RecordReader
+	 */
+	public RecordReader records(final String enc, final char delimiter, final char quote, final char escape) throws java.io.IOException {
+		return new RecordReader(toPath(), java.nio.charset.Charset.forName(enc), delimiter, quote, escape);
+	}
 
-	// * Reading as String
+	/**
+	 * Read the delimited records of this file in parallel, in the current
+	 * encoding.
+	 *
+	 * @param delimiter the field delimiter; fields may be quoted with
+	 *                  {@code "}
+	 * @param action    called concurrently with a reader on each record
+	 *
+	 * @return {@code true} if the operation succeed
+	 *
+	 * @see #forEachRecord(String, char, char, char, java.util.function.Consumer)
+	 */
+	public boolean forEachRecord(final char delimiter, final java.util.function.Consumer<? super RecordReader> action) {
+		return forEachRecord(getCurrentEncoding(), delimiter, '"', '\0', action);
+	}
 
 	/**
-	 * Read data from this file.
+	 * Read the delimited records of this file in parallel.
+	 *
+	 * <p>This file is mapped and cut in chunks at record boundaries, and each
+	 * chunk is read by its own reader; records are not handed out in
+	 * order.</p>
 	 *
-	 * @param ofs offset to start reading
-	 * @param len length of the returning array
+	 * @param enc       encoding name, ASCII, ISO-8859-1 or UTF-8
+	 * @param delimiter the field delimiter
+	 * @param quote     the quote, or {@code '\0'} if fields are not quoted
+	 * @param escape    the char which makes the next one plain, or
+	 *                  {@code '\0'} if there is none
+	 * @param action    called concurrently with a reader on each record
 	 *
-	 * @return String representation of the data in this file.
+	 * @return {@code true} if the operation succeed
 	 */
-	default String reads(int ofs, int len) {
-		return new String(toChars(read(ofs, len)));
+	public boolean forEachRecord(final String enc, final char delimiter, final char quote, final char escape, final java.util.function.Consumer<? super RecordReader> action) {
+		try {
+			RecordReader.forEach(toPath(), java.nio.charset.Charset.forName(enc), delimiter, quote, escape, action);
+			return true;
+		} catch (java.io.IOException | java.io.UncheckedIOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		}
 	}
 
 	/**
-	 * Read data from this file.
+	 * Count the lines, words, chars and bytes of this file in the current
+	 * encoding.
 	 *
-	 * @param len length of the returning array
-	 * @param enc encoding name
+	 * @return the counts of this file
 	 *
-	 * @return String representation of the data in this file.
+	 * @see #count(String)
 	 */
-	default String reads(int len, String enc) {
-		return new String(toChars(read(len, enc)));
+	public Count count() {
+		return count(getCurrentEncoding());
 	}
 
 	/**
-	 * Read data from this file.
+	 * Count the lines, words, chars and bytes of this file.
+	 *
+	 * <p>Lines are counted as {@code \n} chars and words as runs of chars other
+	 * than ASCII white space, as {@code wc} does. ASCII, ISO-8859-1 and UTF-8
+	 * files are scanned in parallel straight from mapped chunks without being
+	 * decoded; files in other charsets are decoded sequentially.</p>
 	 *
 	 * @param enc encoding name
 	 *
-	 * @return String representation of the data in this file.
+	 * @return the counts of this file
+	 */
+	public Count count(final String enc) {
+		try {
+			final var charset = java.nio.charset.Charset.forName(enc);
+			if (LineSpliterator.supports(charset)) {
+				try (var channel = java.nio.channels.FileChannel.open(toPath(), java.nio.file.StandardOpenOption.READ)) {
+					final var utf8 = java.nio.charset.StandardCharsets.UTF_8.equals(charset);
+					final var part = java.util.concurrent.ForkJoinPool.commonPool().invoke(new CountTask(channel, utf8, 0, channel.size()));
+					return new Count(part.lines, part.words, part.chars, part.bytes);
+				}
+			}
+			try (var text = new MappedText(toPath(), charset)) {
+				final var buf = java.nio.CharBuffer.allocate(8192);
+				long lines = 0, words = 0, chars = 0;
+				var inWord = false;
+				int n;
+				while ((n = text.read(buf.clear())) > -1) {
+					chars += n;
+					for (var i = 0; i < n; i++) {
+						final var c = buf.get(i);
+						if (c == '\n') lines++;
+						if (c < 0x80 && CountTask.isSpace((byte) c)) inWord = false;
+						else if (!inWord) {
+							inWord = true;
+							words++;
+						}
+					}
+				}
+				return new Count(lines, words, chars, length());
+			}
+		} catch (java.io.IOException | java.io.UncheckedIOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return new Count(0, 0, 0, 0);
+		}
+	}
+
+	/**
+	 * Count the lines, words, chars and bytes of this file.
+	 *
+	 * @param charset the charset
+	 *
+	 * @return the counts of this file
+	 *
+	 * @see #count(String)
 	 */
-	default String reads(String enc) {
-		return new String(toChars(read(enc)));
+	public Count count(final java.nio.charset.Charset charset) {
+		return count(charset.name());
 	}
 
 	/**
-	 * Read data from this file.
+	 * Returns the most frequent terms of this file in the current encoding,
+	 * with any char other than a letter or a digit as delimiter.
 	 *
-	 * @param len length of the returning array
+	 * @param k the number of terms
 	 *
-	 * @return String representation of the data in this file.
+	 * @return up to {@code k} terms, the most frequent first
+	 *
+	 * @see #topTerms(String, int, java.util.function.IntPredicate)
 	 */
-	default String reads(int len) {
-		return new String(toChars(read(len)));
+	public java.util.List<Term> topTerms(final int k) {
+		return topTerms(getCurrentEncoding(), k, c -> !Character.isLetterOrDigit(c));
 	}
 
 	/**
-	 * Read data from this file.
+	 * Returns the most frequent terms of this file in the current encoding.
+	 *
+	 * @param k         the number of terms
+	 * @param delimiter whether a char separates terms
 	 *
-	 * @return String representation of the data in this file.
+	 * @return up to {@code k} terms, the most frequent first
+	 *
+	 * @see #topTerms(String, int, java.util.function.IntPredicate)
 	 */
-	default String reads() {
-		return new String(toChars(read()));
+	public java.util.List<Term> topTerms(final int k, final java.util.function.IntPredicate delimiter) {
+		return topTerms(getCurrentEncoding(), k, delimiter);
 	}
 
+	/**
+	 * Returns the most frequent terms of this file.
+	 *
+	 * <p>Terms are runs of chars which are not delimiters. The file is
+	 * scanned in parallel straight from mapped chunks without being decoded,
+	 * and only the {@code k} terms returned are turned into Strings. The
+	 * delimiter class is asked about ASCII chars, or about every char in
+	 * ISO-8859-1; other chars are never delimiters. Ties are returned in the
+	 * order of their text.</p>
+	 *
+	 * @param enc       encoding name, ASCII, ISO-8859-1 or UTF-8
+	 * @param k         the number of terms
+	 * @param delimiter whether a char separates terms
+	 *
+	 * @return up to {@code k} terms, the most frequent first, or an empty list
+	 *         if this file can't be read
+	 */
+	public java.util.List<Term> topTerms(final String enc, final int k, final java.util.function.IntPredicate delimiter) {
+		try {
+			final var charset = java.nio.charset.Charset.forName(enc);
+			if (!LineSpliterator.supports(charset)) throw new IllegalArgumentException("Can't count terms of " + charset + " files.");
+			try (var channel = java.nio.channels.FileChannel.open(toPath(), java.nio.file.StandardOpenOption.READ)) {
+				final var table = java.util.concurrent.ForkJoinPool.commonPool().invoke(new TermTask(channel, TermTask.delimiters(charset, delimiter)));
+				return table.top(k, charset);
+			}
+		} catch (java.io.IOException | java.io.UncheckedIOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return new java.util.ArrayList<>();
+		}
+	}
 
-	// * Writing
+	/**
+	 * Returns the last lines of this file in the current encoding.
+	 *
+	 * @param lines the number of lines
+	 *
+	 * @return the last lines of this file
+	 *
+	 * @see #tail(int, String)
+	 */
+	public String tail(final int lines) {
+		return tail(lines, getCurrentEncoding());
+	}
 
 	/**
-	 * Write a message on this file.
+	 * Returns the last lines of this file.
 	 *
-	 * @param encoding encoding name.
-	 * @param parts    parts of the message
+	 * <p>Lines end with {@code \n} and are returned as they are in the file,
+	 * terminators included. ASCII, ISO-8859-1 and UTF-8 files are scanned
+	 * backwards from the end in blocks of bytes and only the last lines are
+	 * decoded; files in other charsets are decoded from the start, keeping
+	 * only the last lines.</p>
 	 *
-	 * @return {@code true} if the operation succeed
+	 * @param lines the number of lines
+	 * @param enc   encoding name
+	 *
+	 * @return the last lines of this file
 	 */
-	boolean write(String encoding, String... parts);
+	public String tail(final int lines, final String enc) {
+		if (lines <= 0) return "";
+		try {
+			final var charset = java.nio.charset.Charset.forName(enc);
+			if (!LineSpliterator.supports(charset)) {
+				return decodeTail(lines, charset);
+			}
+			try (var text = new MappedText(toPath(), charset)) {
+				text.seek(lineStart(lines));
+				return new String(text.read(0));
+			}
+		} catch (java.io.IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return "";
+		}
+	}
 
 	/**
-	 * Write a String on this file using current encoding.
+	 * Returns the last lines of this file, decoding it from the start.
 	 *
-	 * @param message the string to write
+	 * @param lines   the number of lines, at least 1
+	 * @param charset the charset, any
 	 *
-	 * @return {@code true} if the operation succeed
+	 * @return the last lines of this file, terminators included
+	 *
+	 * @throws java.io.IOException if this file can't be read
 	 */
-	default boolean write(String message) {
-		return write(getCurrentEncoding(), message);
+	private String decodeTail(final int lines, final java.nio.charset.Charset charset) throws java.io.IOException {
+		final var last = new java.util.ArrayDeque<String>(lines);
+		final var line = new StringBuilder();
+		try (var in = new java.io.InputStreamReader(new java.io.FileInputStream(getAbsoluteFile()), charset)) {
+			final var buf = new char[8192];
+			for (int n; (n = in.read(buf)) > 0; ) {
+				var from = 0;
+				for (var i = 0; i < n; i++) {
+					if (buf[i] != '\n') continue;
+					line.append(buf, from, i + 1 - from);
+					if (last.size() == lines) last.poll();
+					last.add(line.toString());
+					line.setLength(0);
+					from = i + 1;
+				}
+				line.append(buf, from, n - from);
+			}
+		}
+		if (line.length() > 0) {
+			if (last.size() == lines) last.poll();
+			last.add(line.toString());
+		}
+		return String.join("", last);
+	}
+
+	/**
+	 * Returns the last lines of this file.
+	 *
+	 * @param lines   the number of lines
+	 * @param charset the charset
+	 *
+	 * @return the last lines of this file
+	 *
+	 * @see #tail(int, String)
+	 */
+	public String tail(final int lines, final java.nio.charset.Charset charset) {
+		return tail(lines, charset.name());
+	}
+
+	/**
+	 * Find the start of the n-th line before the end of this file.
+	 *
+	 * <p>A line feed which ends the file does not start a new line.</p>
+	 *
+	 * @param lines the number of lines
+	 *
+	 * @return the offset of the first byte of the line, {@code 0} if this
+	 *         file has fewer lines
+	 *
+	 * @throws java.io.IOException if this file can't be read
+	 */
+	private long lineStart(final int lines) throws java.io.IOException {
+		try (var channel = java.nio.channels.FileChannel.open(toPath(), java.nio.file.StandardOpenOption.READ)) {
+			final var size = channel.size();
+			final var buf = java.nio.ByteBuffer.allocate(8192);
+			var found = 0;
+			for (var at = size; at > 0; ) {
+				final var from = Math.max(0, at - buf.capacity());
+				buf.clear().limit((int) (at - from));
+				while (buf.hasRemaining() && channel.read(buf, from + buf.position()) > 0) continue;
+				for (var i = buf.position() - 1; i >= 0; i--) {
+					if (buf.get(i) != '\n' || from + i == size - 1) continue;
+					if (++found == lines) return from + i + 1;
+				}
+				at = from;
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Follow this file in the current encoding, polling it 4 times a second.
+	 *
+	 * @param sink receives the appended text
+	 *
+	 * @return the follower, to be closed when no longer needed
+	 *
+	 * @see #follow(String, long, java.util.function.Consumer)
+	 */
+	public Follower follow(final java.util.function.Consumer<? super CharSequence> sink) {
+		return follow(getCurrentEncoding(), 250, sink);
+	}
+
+	/**
+	 * Follow this file from its current end, like {@code tail -F}.
+	 *
+	 * @param enc          encoding name
+	 * @param periodMillis time between polls
+	 * @param sink         receives the appended text; the sequence is reused
+	 *                     and only valid until the consumer returns
+	 *
+	 * @return the follower, to be closed when no longer needed
+	 *
+	 * @see Follower
+	 */
+	public Follower follow(final String enc, final long periodMillis, final java.util.function.Consumer<? super CharSequence> sink) {
+		return new Follower(toPath(), java.nio.charset.Charset.forName(enc), periodMillis, sink);
+	}
+
+	/**
+	 * Follow this file from its current end, like {@code tail -F}.
+	 *
+	 * @param charset      the charset
+	 * @param periodMillis time between polls
+	 * @param sink         receives the appended text; the sequence is reused
+	 *                     and only valid until the consumer returns
+	 *
+	 * @return the follower, to be closed when no longer needed
+	 *
+	 * @see #follow(String, long, java.util.function.Consumer)
+	 */
+	public Follower follow(final java.nio.charset.Charset charset, final long periodMillis, final java.util.function.Consumer<? super CharSequence> sink) {
+		return new Follower(toPath(), charset, periodMillis, sink);
+	}
+
+	/**
+	 * Find the first occurrence of a String in this file.
+	 *
+	 * @param needle the String to find
+	 *
+	 * @return the byte offset of the first match, or {@code -1} if there is
+	 *         none
+	 *
+	 * @see #findAll(String, String)
+	 */
+	public long indexOf(final String needle) {
+		return indexOf(needle, getCurrentEncoding());
+	}
+
+	/**
+	 * Find the first occurrence of a String in this file.
+	 *
+	 * @param needle the String to find
+	 * @param enc    encoding name
+	 *
+	 * @return the byte offset of the first match, or {@code -1} if there is
+	 *         none
+	 *
+	 * @see #findAll(String, String)
+	 */
+	public long indexOf(final String needle, final String enc) {
+		if (needle.isEmpty()) return 0;
+		final var hits = search(needle, enc, true);
+		return hits == null || hits.count == 0 ? -1 : hits.offsets[0];
+	}
+
+	/**
+	 * Find the first occurrence of a String in this file.
+	 *
+	 * @param needle  the String to find
+	 * @param charset the charset
+	 *
+	 * @return the byte offset of the first match, or {@code -1} if there is
+	 *         none
+	 *
+	 * @see #indexOf(String, String)
+	 */
+	public long indexOf(final String needle, final java.nio.charset.Charset charset) {
+		return indexOf(needle, charset.name());
+	}
+
+	/**
+	 * Find every occurrence of a String in this file.
+	 *
+	 * @param needle the String to find
+	 *
+	 * @return the matches, in order
+	 *
+	 * @see #findAll(String, String)
+	 */
+	public java.util.List<Match> findAll(final String needle) {
+		return findAll(needle, getCurrentEncoding());
+	}
+
+	/**
+	 * Find every occurrence of a String in this file.
+	 *
+	 * <p>The needle is encoded and searched as bytes over mapped chunks of this
+	 * file, in parallel, so this file is never decoded. Overlapping matches are
+	 * reported too. Only ASCII, ISO-8859-1 and UTF-8 files can be searched.</p>
+	 *
+	 * @param needle the String to find
+	 * @param enc    encoding name
+	 *
+	 * @return the matches, in order
+	 */
+	public java.util.List<Match> findAll(final String needle, final String enc) {
+		final var hits = search(needle, enc, false);
+		if (hits == null) return new java.util.ArrayList<>();
+		final var ret = new java.util.ArrayList<Match>(hits.count);
+		for (var i = 0; i < hits.count; i++) ret.add(new Match(hits.offsets[i], hits.lines[i]));
+		return ret;
+	}
+
+	/**
+	 * Find every occurrence of a String in this file.
+	 *
+	 * @param needle  the String to find
+	 * @param charset the charset
+	 *
+	 * @return the matches, in order
+	 *
+	 * @see #findAll(String, String)
+	 */
+	public java.util.List<Match> findAll(final String needle, final java.nio.charset.Charset charset) {
+		return findAll(needle, charset.name());
+	}
+
+	/**
+	 * Search this file for the bytes of a String.
+	 *
+	 * @param needle the String to find
+	 * @param enc    encoding name
+	 * @param first  whether to stop at the first match
+	 *
+	 * @return the matches, or {@code null} if the search failed
+	 */
+	private SearchTask.Hits search(final String needle, final String enc, final boolean first) {
+		try {
+			final var charset = java.nio.charset.Charset.forName(enc);
+			if (!LineSpliterator.supports(charset)) throw new IllegalArgumentException("Can't search " + charset + " files.");
+			final var pattern = needle.getBytes(charset);
+			if (pattern.length == 0) return new SearchTask.Hits();
+			try (var channel = java.nio.channels.FileChannel.open(toPath(), java.nio.file.StandardOpenOption.READ)) {
+				return java.util.concurrent.ForkJoinPool.commonPool().invoke(new SearchTask(channel, pattern, first));
+			}
+		} catch (java.io.IOException | java.io.UncheckedIOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Compare the lines of this file with the lines of another file.
+	 *
+	 * @param other the changed file
+	 *
+	 * @return the hunks which turn this file into {@code other}, in order, or
+	 *         an empty list if the files can't be read
+	 *
+	 * @see #diff(TextFile, java.util.function.Consumer)
+	 */
+	public java.util.List<Hunk> diff(final TextFile other) {
+		final var ret = new java.util.ArrayList<Hunk>();
+		return diff(other, ret::add) ? ret : new java.util.ArrayList<>();
+	}
+
+	/**
+	 * Compare the lines of this file with the lines of another file.
+	 *
+	 * <p>Both files are read in the current encoding of this file, which must
+	 * be ASCII-compatible. Their common start and end are skipped by comparing
+	 * bytes, lines are compared by 64-bit hashes, checked byte by byte, and
+	 * the shortest edit script is found with the linear space variant of
+	 * Myers' algorithm. Only the lines of the hunks are turned into
+	 * Strings.</p>
+	 *
+	 * @param other  the changed file
+	 * @param action called with each hunk, in order
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	public boolean diff(final TextFile other, final java.util.function.Consumer<? super Hunk> action) {
+		try {
+			LineDiff.diff(toPath(), other.toPath(), getCharset(), action);
+			return true;
+		} catch (java.io.IOException | java.io.UncheckedIOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Transcode this file into another file.
+	 *
+	 * @param out the file to write
+	 * @param enc the encoding name of {@code out}
+	 *
+	 * @return {@code true} if the operation succeed
+	 *
+	 * @see #transcodeTo(TextFile, java.nio.charset.Charset)
+	 */
+	public boolean transcodeTo(final TextFile out, final String enc) {
+		try {
+			return transcodeTo(out, java.nio.charset.Charset.forName(enc));
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Transcode this file into another file.
+	 *
+	 * <p>This file is read in its current encoding and streamed through
+	 * fixed-size decoder and encoder buffers, so memory does not grow with
+	 * its size; chars which can't be decoded or encoded are replaced. When
+	 * both charsets are ASCII-compatible, the pure-ASCII start of this file,
+	 * which is the whole file most of the times, is copied unchanged with
+	 * {@code FileChannel.transferTo}. The output is written aside and moved
+	 * over {@code out} at the end, so {@code out} may be this same file, and
+	 * its current encoding becomes {@code target}.</p>
+	 *
+	 * @param out    the file to write
+	 * @param target the charset of {@code out}
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	public boolean transcodeTo(final TextFile out, final java.nio.charset.Charset target) {
+		java.nio.file.Path temp = null;
+		try {
+			final var source = getCharset();
+			final var dest = out.toPath().toAbsolutePath();
+			temp = java.nio.file.Files.createTempFile(dest.getParent(), "." + dest.getFileName() + ".", ".tmp");
+			copyPermissions(dest, temp);
+			try (var in = java.nio.channels.FileChannel.open(toPath(), java.nio.file.StandardOpenOption.READ);
+				var os = java.nio.channels.FileChannel.open(temp, java.nio.file.StandardOpenOption.WRITE)) {
+				var pos = 0L;
+				if (LineSpliterator.supports(source) && LineSpliterator.supports(target)) {
+					final var ascii = asciiPrefix(in);
+					while (pos < ascii) pos += in.transferTo(pos, ascii - pos, os);
+				}
+				final var decoder = source.newDecoder()
+					.onMalformedInput(java.nio.charset.CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(java.nio.charset.CodingErrorAction.REPLACE);
+				final var encoder = target.newEncoder()
+					.onMalformedInput(java.nio.charset.CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(java.nio.charset.CodingErrorAction.REPLACE);
+				final var bytes = java.nio.ByteBuffer.allocate(1 << 16);
+				final var chars = java.nio.CharBuffer.allocate(1 << 16);
+				final var encoded = java.nio.ByteBuffer.allocate((int) Math.ceil(encoder.maxBytesPerChar()) * chars.capacity());
+				final var size = in.size();
+				var last = pos >= size;
+				while (true) {
+					if (!last) {
+						final var n = in.read(bytes, pos);
+						if (n < 0) last = true;
+						else pos += n;
+						last |= pos >= size;
+					}
+					bytes.flip();
+					while (FastDecoder.decode(decoder, bytes, chars, last).isOverflow()) encode(encoder, chars, encoded, os, false);
+					bytes.compact();
+					if (last) break;
+					encode(encoder, chars, encoded, os, false);
+				}
+				while (decoder.flush(chars).isOverflow()) encode(encoder, chars, encoded, os, false);
+				encode(encoder, chars, encoded, os, true);
+			}
+			java.nio.file.Files.move(temp, dest, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+			out.setEncoding(target);
+			TextCache.invalidate(out);
+			return true;
+		} catch (java.io.IOException | java.io.UncheckedIOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		} finally {
+			try {
+				if (temp != null) java.nio.file.Files.deleteIfExists(temp);
+			} catch (java.io.IOException ex) {
+				System.err.println(ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Encode decoded chars and write them.
+	 *
+	 * @param last whether no more chars follow
+	 */
+	private static void encode(final java.nio.charset.CharsetEncoder encoder, final java.nio.CharBuffer chars, final java.nio.ByteBuffer encoded, final java.nio.channels.FileChannel os, final boolean last) throws java.io.IOException {
+		chars.flip();
+		encoder.encode(chars, encoded, last);
+		if (last) encoder.flush(encoded);
+		chars.compact();
+		for (encoded.flip(); encoded.hasRemaining();) os.write(encoded);
+		encoded.clear();
+	}
+
+	/**
+	 * Returns the length of the start of a file which is pure ASCII.
+	 *
+	 * @param channel the channel of the file
+	 *
+	 * @return the offset of the first byte over {@code 0x7F}, or the size of
+	 *         the file
+	 */
+	private static long asciiPrefix(final java.nio.channels.FileChannel channel) throws java.io.IOException {
+		final var size = channel.size();
+		for (var base = 0L; base < size; base += MappedText.WINDOW) {
+			final var map = channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, base, Math.min(MappedText.WINDOW, size - base));
+			final var lim = map.limit();
+			var i = 0;
+			for (; i + 8 <= lim; i += 8) if ((map.getLong(i) & 0x8080808080808080L) != 0) break;
+			for (; i < lim; i++) if (map.get(i) < 0) return base + i;
+		}
+		return size;
+	}
+
+	/**
+	 * Split this file into shards which end at line boundaries.
+	 *
+	 * <p>Shards are named after this file with a numeric suffix, as
+	 * {@code split -d} does, and are about the same size: each cut is placed
+	 * at the last {@code \n} before an even share of the bytes left, found by
+	 * reading a few blocks backwards from there. A line longer than a shard
+	 * makes its shard end at the first line feed after it. Shards are copied
+	 * in parallel with {@code FileChannel.transferTo}, so their bytes never
+	 * pass through the heap. Shards of this file left in {@code outDir} by an
+	 * earlier split into more parts are deleted.</p>
+	 *
+	 * @param maxBytesPerShard the maximum size of each shard, unless a single
+	 *                         line is longer
+	 * @param outDir           the folder to write the shards to, created if
+	 *                         it does not exist
+	 *
+	 * @return the shards, in order, which is an empty array for an empty
+	 *         file, or {@code null} if the operation failed
+	 */
+	public TextFile[] split(final long maxBytesPerShard, final Folder outDir) {
+		if (maxBytesPerShard <= 0) throw new IllegalArgumentException("Shards must hold at least one byte.");
+		final var created = new java.util.ArrayList<TextFile>();
+		try (var channel = java.nio.channels.FileChannel.open(toPath(), java.nio.file.StandardOpenOption.READ)) {
+			java.nio.file.Files.createDirectories(outDir.toPath());
+			final var size = channel.size();
+			final var cuts = new java.util.ArrayList<Long>();
+			cuts.add(0L);
+			for (var start = 0L; start < size; ) {
+				final var left = size - start;
+				final var shards = (left + maxBytesPerShard - 1) / maxBytesPerShard;
+				final var target = start + (left + shards - 1) / shards;
+				start = target >= size ? size : cut(channel, start, target);
+				cuts.add(start);
+			}
+			final var digits = Math.max(3, String.valueOf(cuts.size() - 2).length());
+			for (var i = 0; i < cuts.size() - 1; i++) {
+				final var shard = new TextFile(outDir, String.format("%s.%0" + digits + "d", getName(), i));
+				shard.setEncoding(encoding);
+				created.add(shard);
+			}
+			java.util.stream.IntStream.range(0, created.size()).parallel().forEach(i -> {
+				final var shard = created.get(i);
+				try (var out = java.nio.channels.FileChannel.open(shard.toPath(), java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.WRITE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING)) {
+					final long from = cuts.get(i), to = cuts.get(i + 1);
+					for (var at = from; at < to; ) at += channel.transferTo(at, to - at, out);
+				} catch (java.io.IOException ex) {
+					throw new java.io.UncheckedIOException(ex);
+				}
+				TextCache.invalidate(shard);
+			});
+			deleteStaleShards(outDir, created);
+			return created.toArray(new TextFile[0]);
+		} catch (java.io.IOException | java.io.UncheckedIOException ex) {
+			System.err.println(ex.getMessage());
+			for (var v : created) if (v.exists()) v.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Delete the shards of this file in a folder which are not among the
+	 * ones just written.
+	 *
+	 * @param outDir  the folder of the shards
+	 * @param current the shards just written
+	 */
+	private void deleteStaleShards(final Folder outDir, final java.util.List<TextFile> current) throws java.io.IOException {
+		final var keep = new java.util.HashSet<java.nio.file.Path>();
+		for (var v : current) keep.add(v.toPath().getFileName());
+		final var pattern = java.util.regex.Pattern.compile(java.util.regex.Pattern.quote(getName()) + "\\.[0-9]{3,}");
+		try (var paths = java.nio.file.Files.list(outDir.toPath())) {
+			for (var it = paths.iterator(); it.hasNext(); ) {
+				final var path = it.next();
+				if (keep.contains(path.getFileName()) || !pattern.matcher(path.getFileName().toString()).matches()) continue;
+				java.nio.file.Files.deleteIfExists(path);
+				TextCache.invalidate(path.toFile());
+			}
+		}
+	}
+
+	/**
+	 * Find where a shard ends.
+	 *
+	 * @param channel the channel of this file
+	 * @param start   the start of the shard
+	 * @param target  the wanted end of the shard
+	 *
+	 * @return the offset right after the last line feed in
+	 *         {@code [start, target)}, or after the first one from
+	 *         {@code target} on, or the end of this file
+	 */
+	private static long cut(final java.nio.channels.FileChannel channel, final long start, final long target) throws java.io.IOException {
+		final var buf = java.nio.ByteBuffer.allocate(1 << 16);
+		for (var end = target; end > start; end -= buf.capacity()) {
+			final var from = Math.max(start, end - buf.capacity());
+			buf.clear().limit((int) (end - from));
+			while (buf.hasRemaining() && channel.read(buf, from + buf.position()) > 0) continue;
+			for (var i = buf.position() - 1; i >= 0; i--) if (buf.get(i) == '\n') return from + i + 1;
+		}
+		final var size = channel.size();
+		for (var from = target; from < size; from += buf.capacity()) {
+			buf.clear();
+			final var n = channel.read(buf, from);
+			if (n <= 0) break;
+			for (var i = 0; i < n; i++) if (buf.get(i) == '\n') return from + i + 1;
+		}
+		return size;
+	}
+
+	/**
+	 * Sort the lines of this file into another file.
+	 *
+	 * <p>Lines are read in the current encoding of this file and written in
+	 * the current encoding of {@code out}, each one followed by {@code \n}.
+	 * Input larger than half of the memory budget is cut into sorted runs
+	 * which are spilled under {@link aria.Local#TEMP} and merged afterwards.
+	 * The sort is stable and {@code out} may be this same file.</p>
+	 *
+	 * @param order  the order of the lines
+	 * @param budget the memory budget, in bytes
+	 * @param out    the file to write the sorted lines to
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	public boolean sortLines(final java.util.Comparator<? super CharSequence> order, final long budget, final TextFile out) {
+		return sortLines(order, budget, false, out);
+	}
+
+	/**
+	 * Sort the lines of this file into another file.
+	 *
+	 * @param order    the order of the lines
+	 * @param budget   the memory budget, in bytes
+	 * @param distinct whether to drop lines which compare equal to the
+	 *                 previous one, as {@code sort -u} does
+	 * @param out      the file to write the sorted lines to
+	 *
+	 * @return {@code true} if the operation succeed
+	 *
+	 * @see #sortLines(java.util.Comparator, long, TextFile)
+	 */
+	public boolean sortLines(final java.util.Comparator<? super CharSequence> order, final long budget, final boolean distinct, final TextFile out) {
+		return sortLines(new LineSorter(order, null, distinct, budget), out);
+	}
+
+	/**
+	 * Sort the lines of this file by a numeric key into another file.
+	 *
+	 * <p>The key of each line is computed once and lines are then compared by
+	 * their keys alone, which is much cheaper than parsing numbers on every
+	 * comparison.</p>
+	 *
+	 * @param key      the key of each line
+	 * @param budget   the memory budget, in bytes
+	 * @param distinct whether to drop lines with the same key as the previous
+	 *                 one
+	 * @param out      the file to write the sorted lines to
+	 *
+	 * @return {@code true} if the operation succeed
+	 *
+	 * @see #sortLines(java.util.Comparator, long, TextFile)
+	 */
+	public boolean sortLinesByKey(final java.util.function.ToLongFunction<? super CharSequence> key, final long budget, final boolean distinct, final TextFile out) {
+		return sortLines(new LineSorter(null, key, distinct, budget), out);
+	}
+
+	private boolean sortLines(final LineSorter sorter, final TextFile out) {
+		try {
+			// Opened here, so a missing input fails before out is touched.
+			sorter.sort(openLineViews(getCharset()).map(CharSequence::toString), out.toPath(), out.getCharset());
+			TextCache.invalidate(out);
+			return true;
+		} catch (java.io.IOException | java.io.UncheckedIOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Write the distinct lines of this file into another file, with a
+	 * quarter of the maximum heap as memory budget.
+	 *
+	 * @param out the file to write the distinct lines to
+	 *
+	 * @return {@code true} if the operation succeed
+	 *
+	 * @see #distinctLines(long, TextFile)
+	 */
+	public boolean distinctLines(final TextFile out) {
+		return distinctLines(Runtime.getRuntime().maxMemory() / 4, out);
+	}
+
+	/**
+	 * Write the distinct lines of this file into another file.
+	 *
+	 * <p>The first occurrence of each line is kept, in the order of this
+	 * file. Lines are read in the current encoding of this file and written
+	 * in the current encoding of {@code out}, each one followed by
+	 * {@code \n}. Only a hash and an offset of each distinct line are kept
+	 * in memory; when they don't fit the memory budget, they are spilled in
+	 * partitions under {@link aria.Local#TEMP}. {@code out} may be this same
+	 * file.</p>
+	 *
+	 * @param budget the memory budget, in bytes
+	 * @param out    the file to write the distinct lines to
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	public boolean distinctLines(final long budget, final TextFile out) {
+		try {
+			new LineDeduper(budget).distinct(this, out.toPath(), out.getCharset());
+			TextCache.invalidate(out);
+			return true;
+		} catch (java.io.IOException | java.io.UncheckedIOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		}
+	}
+
+	@Override
+	public boolean write(final String enc, final String... parts) {
+		return write(enc, false, parts);
+	}
+
+	@Override
+	public boolean append(final String enc, final String... parts) {
+		return write(enc, true, parts);
+	}
+
+	@Override
+	public boolean writeAtomic(final String enc, final String... parts) {
+		final var target = toPath();
+		java.nio.file.Path temp = null;
+		try {
+			final var charset = java.nio.charset.Charset.forName(enc);
+			final var parent = getAbsoluteFile().getParentFile().toPath();
+			temp = java.nio.file.Files.createTempFile(parent, "." + getName() + ".", ".tmp");
+			copyPermissions(target, temp);
+			try (var channel = java.nio.channels.FileChannel.open(temp, java.nio.file.StandardOpenOption.WRITE)) {
+				GatherWriter.write(channel, charset, parts);
+				channel.force(true);
+			}
+			java.nio.file.Files.move(temp, target, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+			temp = null;
+			TextCache.invalidate(this);
+			try (var dir = java.nio.channels.FileChannel.open(parent, java.nio.file.StandardOpenOption.READ)) {
+				dir.force(true);
+			} catch (java.io.IOException ignored) {
+				// Directories can't be synced on every platform.
+			}
+			return true;
+		} catch (java.io.IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		} finally {
+			if (temp != null) temp.toFile().delete();
+		}
+	}
+
+	/**
+	 * Give a temporary file the POSIX permissions of the file it replaces.
+	 *
+	 * @param target the file to be replaced
+	 * @param temp   the temporary file
+	 */
+	private static void copyPermissions(final java.nio.file.Path target, final java.nio.file.Path temp) {
+		try {
+			java.nio.file.Files.setPosixFilePermissions(temp, java.nio.file.Files.getPosixFilePermissions(target));
+		} catch (UnsupportedOperationException | java.io.IOException ignored) {
+			// Not a POSIX file system, or there is no target yet.
+		}
+	}
+
+	/**
+	 * Write a message on this file without blocking the calling thread.
+	 *
+	 * @param enc   encoding name
+	 * @param parts parts of the message
+	 *
+	 * @return {@code true} once written, {@code false} if the operation failed
+	 *
+	 * @see AsyncIO
+	 */
+	public java.util.concurrent.CompletableFuture<Boolean> writeAsync(final String enc, final String... parts) {
+		try {
+			return AsyncIO.write(this, java.nio.charset.Charset.forName(enc), parts);
+		} catch (IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return java.util.concurrent.CompletableFuture.completedFuture(false);
+		}
+	}
+
+	/**
+	 * Write a String on this file without blocking the calling thread, using
+	 * current encoding.
+	 *
+	 * @param message the string to write
+	 *
+	 * @return {@code true} once written, {@code false} if the operation failed
+	 *
+	 * @see #writeAsync(String, String...)
+	 */
+	public java.util.concurrent.CompletableFuture<Boolean> writeAsync(final String message) {
+		return writeAsync(getCurrentEncoding(), message);
+	}
+
+	/**
+	 * Replace the contents of many files, four per processor at once.
+	 *
+	 * @param contents the contents of each file, written in its current
+	 *                 encoding
+	 *
+	 * @return the outcome of the writes
+	 *
+	 * @see #writeAll(java.util.Map, int)
+	 */
+	public static Batch writeAll(final java.util.Map<? extends TextFile, ? extends CharSequence> contents) {
+		return writeAll(contents, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Replace the contents of many files.
+	 *
+	 * <p>Files are written by up to {@code threads} threads, the calling one
+	 * included, which reuse their encoders and buffers from one file to the
+	 * next. Failures are not printed: they are collected in the returned
+	 * batch, one per failed entry.</p>
+	 *
+	 * @param contents the contents of each file, written in its current
+	 *                 encoding
+	 * @param threads  maximum number of files written at once
+	 *
+	 * @return the outcome of the writes
+	 */
+	public static Batch writeAll(final java.util.Map<? extends TextFile, ? extends CharSequence> contents, final int threads) {
+		return BulkWriter.write(contents, Math.max(threads, 1));
+	}
+
+	/**
+	 * Write a message on this file.
+	 *
+	 * @param enc    encoding name
+	 * @param append whether to keep the current contents of this file
+	 * @param parts  parts of the message
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	private boolean write(final String enc, final boolean append, final String... parts) {
+		final var mode = append ? java.nio.file.StandardOpenOption.APPEND : java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+		try (var channel = java.nio.channels.FileChannel.open(toPath(), java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.WRITE, mode)) {
+			GatherWriter.write(channel, java.nio.charset.Charset.forName(enc), parts);
+			TextCache.invalidate(this);
+			return true;
+		} catch (java.io.IOException | IllegalArgumentException ex) {
+			System.err.println(ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Open an appender over this file in the current encoding.
+	 *
+	 * <p>Batches of up to 64 KB are written at least every 200 ms and left to
+	 * the operating system to be synced.</p>
+	 *
+	 * @return a new appender
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see #appender(String, int, long, Appender.Sync)
+	 */
+	public Appender appender() throws java.io.IOException {
+		return appender(getCurrentEncoding(), 1 << 16, 200, Appender.Sync.NEVER);
+	}
+
+	/**
+	 * Open an appender over this file.
+	 *
+	 * @param enc         encoding name
+	 * @param batchSize   number of bytes which triggers a write
+	 * @param flushMillis maximum time a message waits to be written, {@code 0}
+	 *                    to wait for a full batch
+	 * @param sync        when written batches are synced to the device
+	 *
+	 * @return a new appender
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see Appender
+	 */
+	public Appender appender(final String enc, final int batchSize, final long flushMillis, final Appender.Sync sync) throws java.io.IOException {
+		return new Appender(toPath(), java.nio.charset.Charset.forName(enc), batchSize, flushMillis, sync);
+	}
+
+	/**
+	 * Open an appender over this file.
+	 *
+	 * @param charset     the charset
+	 * @param batchSize   number of bytes which triggers a write
+	 * @param flushMillis maximum time a message waits to be written, {@code 0}
+	 *                    to wait for a full batch
+	 * @param sync        when written batches are synced to the device
+	 *
+	 * @return a new appender
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see #appender(String, int, long, Appender.Sync)
+	 */
+	public Appender appender(final java.nio.charset.Charset charset, final int batchSize, final long flushMillis, final Appender.Sync sync) throws java.io.IOException {
+		return new Appender(toPath(), charset, batchSize, flushMillis, sync);
+	}
+
+	/**
+	 * Open a lock-free ring buffer appender over this file in the current
+	 * encoding.
+	 *
+	 * <p>The ring has 4096 slots of 512 bytes; its writer sleeps when idle and
+	 * producers wait when it is full.</p>
+	 *
+	 * @return a new appender
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see #ringAppender(String, int, int, RingAppender.Wait, RingAppender.Overflow)
+	 */
+	public RingAppender ringAppender() throws java.io.IOException {
+		return ringAppender(getCurrentEncoding(), 1 << 12, 512, RingAppender.Wait.SLEEPING, RingAppender.Overflow.BLOCK);
+	}
+
+	/**
+	 * Open a lock-free ring buffer appender over this file.
+	 *
+	 * @param enc      encoding name
+	 * @param slots    number of slots, rounded up to a power of two
+	 * @param slotSize bytes of each slot; longer messages are spilled
+	 * @param wait     how the writer thread waits for messages
+	 * @param overflow what producers do when the ring is full
+	 *
+	 * @return a new appender
+	 *
+	 * @throws java.io.IOException if this file can't be opened
+	 *
+	 * @see RingAppender
+	 */
+	public RingAppender ringAppender(final String enc, final int slots, final int slotSize, final RingAppender.Wait wait, final RingAppender.Overflow overflow) throws java.io.IOException {
+		return new RingAppender(toPath(), java.nio.charset.Charset.forName(enc), slots, slotSize, wait, overflow);
+	}
+
+	/**
+	 * Text File Counts.
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public static final class Count implements java.io.Serializable {
+
+		private static final long serialVersionUID = -1840652744431394553L;
+
+		/** Number of lines. */
+		private final long lines;
+
+		/** Number of words. */
+		private final long words;
+
+		/** Number of chars. */
+		private final long chars;
+
+		/** Number of bytes. */
+		private final long bytes;
+
+		private Count(final long lines, final long words, final long chars, final long bytes) {
+			this.lines = lines;
+			this.words = words;
+			this.chars = chars;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Returns the number of line feeds.
+		 *
+		 * @return the number of lines
+		 */
+		public long getLines() {
+			return lines;
+		}
+
+		/**
+		 * Returns the number of runs of chars other than white space.
+		 *
+		 * @return the number of words
+		 */
+		public long getWords() {
+			return words;
+		}
+
+		/**
+		 * Returns the number of UTF-16 chars.
+		 *
+		 * @return the number of chars
+		 */
+		public long getChars() {
+			return chars;
+		}
+
+		/**
+		 * Returns the size of the file.
+		 *
+		 * @return the number of bytes
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d %d %d %d", lines, words, chars, bytes);
+		}
+	}
+
+	/**
+	 * Text File Term.
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public static final class Term implements java.io.Serializable {
+
+		private static final long serialVersionUID = 3310987361942209183L;
+
+		/** The text of the term. */
+		private final String text;
+
+		/** Occurrences of the term. */
+		private final long count;
+
+		/** Occurrences of every term. */
+		private final long total;
+
+		Term(final String text, final long count, final long total) {
+			this.text = text;
+			this.count = count;
+			this.total = total;
+		}
+
+		/**
+		 * Returns the text of the term.
+		 *
+		 * @return the term
+		 */
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * Returns the number of occurrences of the term.
+		 *
+		 * @return the count of the term
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the share of all the terms taken by this one.
+		 *
+		 * @return the frequency of the term, from {@code 0} to {@code 1}
+		 */
+		public double getFrequency() {
+			return (double) count / total;
+		}
+
+		@Override
+		public String toString() {
+			return text + " " + count;
+		}
+	}
+
+	/**
+	 * Text File Hunk.
+	 *
+	 * <p>Lines removed from a file and the lines added in their place.</p>
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public static final class Hunk implements java.io.Serializable {
+
+		private static final long serialVersionUID = -5018443612794213405L;
+
+		/** First removed line, or where lines are added. */
+		private final long line;
+
+		/** The removed lines. */
+		private final java.util.List<String> removed;
+
+		/** First added line in the other file. */
+		private final long otherLine;
+
+		/** The added lines. */
+		private final java.util.List<String> added;
+
+		Hunk(final long line, final java.util.List<String> removed, final long otherLine, final java.util.List<String> added) {
+			this.line = line;
+			this.removed = java.util.Collections.unmodifiableList(removed);
+			this.otherLine = otherLine;
+			this.added = java.util.Collections.unmodifiableList(added);
+		}
+
+		/**
+		 * Returns the line of the original file where the hunk starts.
+		 *
+		 * @return the line, counting from {@code 0}
+		 */
+		public long getLine() {
+			return line;
+		}
+
+		/**
+		 * Returns the lines removed from the original file.
+		 *
+		 * @return the removed lines, maybe none
+		 */
+		public java.util.List<String> getRemoved() {
+			return removed;
+		}
+
+		/**
+		 * Returns the line of the changed file where the hunk starts.
+		 *
+		 * @return the line, counting from {@code 0}
+		 */
+		public long getOtherLine() {
+			return otherLine;
+		}
+
+		/**
+		 * Returns the lines added in the changed file.
+		 *
+		 * @return the added lines, maybe none
+		 */
+		public java.util.List<String> getAdded() {
+			return added;
+		}
+
+		/**
+		 * Returns this hunk in unified diff format, without context lines.
+		 *
+		 * @return the hunk header followed by its lines
+		 */
+		@Override
+		public String toString() {
+			final var sb = new StringBuilder();
+			sb.append(String.format("@@ -%s +%s @@%n", range(line, removed.size()), range(otherLine, added.size())));
+			for (var v : removed) sb.append('-').append(v).append(System.lineSeparator());
+			for (var v : added) sb.append('+').append(v).append(System.lineSeparator());
+			return sb.toString();
+		}
+
+		/**
+		 * Format a range of lines as {@code diff -u} does.
+		 */
+		private static String range(final long line, final int count) {
+			if (count == 1) return String.valueOf(line + 1);
+			return (count == 0 ? line : line + 1) + "," + count;
+		}
+	}
+
+	/**
+	 * Text File Batch.
+	 *
+	 * <p>Outcome of writing many files at once.</p>
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public static final class Batch implements java.io.Serializable {
+
+		private static final long serialVersionUID = 4471958203385611027L;
+
+		/** Number of files written. */
+		private final int written;
+
+		/** Number of bytes written. */
+		private final long bytes;
+
+		/** Each file which was not written with its error, in input order. */
+		private final java.util.List<java.util.Map.Entry<TextFile, Exception>> failures;
+
+		Batch(final int written, final long bytes, final java.util.List<java.util.Map.Entry<TextFile, Exception>> failures) {
+			this.written = written;
+			this.bytes = bytes;
+			this.failures = java.util.Collections.unmodifiableList(new java.util.ArrayList<>(failures));
+		}
+
+		/**
+		 * Returns the number of files written.
+		 *
+		 * @return the files written
+		 */
+		public int getWritten() {
+			return written;
+		}
+
+		/**
+		 * Returns the number of bytes written, over every file.
+		 *
+		 * @return the bytes written
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Returns the files which were not written.
+		 *
+		 * <p>There is one entry per failed entry of the input, in input
+		 * order, even when several of them hold the same or a {@code null}
+		 * file.</p>
+		 *
+		 * @return each failed file with its error
+		 */
+		public java.util.List<java.util.Map.Entry<TextFile, Exception>> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * Returns whether every file was written.
+		 *
+		 * @return {@code true} if no file failed
+		 */
+		public boolean isComplete() {
+			return failures.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return written + " written, " + failures.size() + " failed";
+		}
+	}
+
+	/**
+	 * Text File Match.
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public static final class Match implements java.io.Serializable {
+
+		private static final long serialVersionUID = 6151833604785416424L;
+
+		/** Offset of the first byte of the match. */
+		private final long offset;
+
+		/** Line of the match. */
+		private final long line;
+
+		private Match(final long offset, final long line) {
+			this.offset = offset;
+			this.line = line;
+		}
+
+		/**
+		 * Returns the offset of the first byte of the match.
+		 *
+		 * @return the byte offset of the match
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Returns the number of line feeds before the match.
+		 *
+		 * @return the line of the match, counting from {@code 0}
+		 */
+		public long getLine() {
+			return line;
+		}
+
+		@Override
+		public String toString() {
+			return line + ":" + offset;
+		}
+	}
+
+	/**
+	 * Text Cursor.
+	 *
+	 * <p>Reads chars at arbitrary offsets into caller-owned buffers. Reading
+	 * forward continues from the last position; reading backward restarts from
+	 * the nearest checkpoint, if {@link #setCheckpoints checkpoints} are
+	 * enabled, or from the start of the file.</p>
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public static final class Cursor implements java.io.Closeable {
+
+		/** The file being read. */
+		private final TextFile file;
+
+		/** The charset of the file. */
+		private final java.nio.charset.Charset charset;
+
+		/** The decoder of the file. */
+		private final MappedText text;
+
+		/** Offset of the next char to decode. */
+		private long position;
+
+		/** The last array read into. */
+		private char[] array;
+
+		/** A buffer over {@link #array}. */
+		private java.nio.CharBuffer wrapper;
+
+		/** Length of the file when it was opened. */
+		private final long length;
+
+		/** Modification time of the file when it was opened. */
+		private final long modified;
+
+		private Cursor(final TextFile file, final java.nio.charset.Charset charset) throws java.io.IOException {
+			this.file = file;
+			this.charset = charset;
+			length = file.length();
+			modified = file.lastModified();
+			text = new MappedText(file.toPath(), charset);
+		}
+
+		/**
+		 * Check whether this cursor still reads the file as it is now.
+		 */
+		private boolean isCurrent(final java.nio.charset.Charset charset) {
+			return this.charset.equals(charset) && file.length() == length && file.lastModified() == modified;
+		}
+
+		/**
+		 * Returns the offset of the next char to be read.
+		 *
+		 * @return the current char offset
+		 */
+		public long position() {
+			return position;
+		}
+
+		/**
+		 * Read chars into a buffer.
+		 *
+		 * @param dst    the destination buffer, filled up to its limit
+		 * @param srcOfs offset to start reading
+		 *
+		 * @return the number of chars read, or {@code -1} at the end of the file
+		 *
+		 * @throws java.io.IOException if the file can't be mapped
+		 */
+		public int read(final java.nio.CharBuffer dst, final long srcOfs) throws java.io.IOException {
+			if (srcOfs < position) {
+				text.seek(0);
+				position = file.seek(text, charset, srcOfs);
+			}
+			position += text.skip(srcOfs - position);
+			final var n = text.read(dst);
+			if (n > 0) position += n;
+			return n;
+		}
+
+		/**
+		 * Read chars into an array.
+		 *
+		 * @param dst    the destination array, filled up to its end
+		 * @param dstOff the first index of {@code dst} to fill
+		 * @param srcOfs offset to start reading
+		 *
+		 * @return the number of chars read, or {@code -1} at the end of the file
+		 *
+		 * @throws java.io.IOException if the file can't be mapped
+		 */
+		public int read(final char[] dst, final int dstOff, final long srcOfs) throws java.io.IOException {
+			if (dst != array) {
+				array = dst;
+				wrapper = java.nio.CharBuffer.wrap(dst);
+			}
+			wrapper.limit(dst.length).position(dstOff);
+			return read(wrapper, srcOfs);
+		}
+
+		@Override
+		public void close() throws java.io.IOException {
+			text.close();
+		}
+	}
+
+	/**
+	 * Read Mode.
+	 *
+	 * @author  Alejandro Elí
+	 * @version 17/10/26
+	 * @since   1.1
+	 */
+	public enum ReadMode {
+
+		/** Map files of {@value MappedText#THRESHOLD} bytes or more, stream the rest. */
+		AUTO,
+
+		/** Always decode through a {@code BufferedReader}. */
+		STREAM,
+
+		/** Always decode straight from a mapping of the file. */
+		MAPPED
 	}
 }
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+/**
+ * Text File Interface.
+ *
+ * @author  Alejandro Elí
+ * @version 24/05/20
+ * @since   1.0
+ */
+interface TextFileInterface {
+
+	private static char[] toChars(int[] data) {
+		char[] ret = new char[data.length];
+		for (int i = 0; i < data.length; i++) {
+			ret[i] = (char) data[i];
+		}
+		return ret;
+	}
+
+	/**
+	 * Get the current file encoding.
+	 *
+	 * @return the current file encoding
+	 */
+	String getCurrentEncoding();
+
+	/**
+	 * Get the default file encoding.
+	 *
+	 * @return the default file encoding
+	 */
+	String getDefaultEncoding();
+
+	/**
+	 * Redefine the current file encoding.
+	 *
+	 * @param encoding the new file encoding
+	 */
+	void setEncoding(String encoding);
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param ofs offset to start reading
+	 * @param len length of returning array
+	 * @param enc encoding name
+	 *
+	 * @return array of {@code int} with char code points
+	 */
+	int[] read(int ofs, int len, String enc);
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param ofs     offset to start reading
+	 * @param len     length of returning array
+	 * @param charset the charset
+	 *
+	 * @return array of {@code int} with char code points
+	 */
+	default int[] read(int ofs, int len, java.nio.charset.Charset charset) {
+		return read(ofs, len, charset.name());
+	}
+
+
+	// * Reading
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param ofs offset to start reading
+	 * @param len length of returning array
+	 *
+	 * @return array of {@code int} with char code points
+	 */
+	default int[] read(int ofs, int len) {
+		return read(ofs, len, getDefaultEncoding());
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param len length of returning array
+	 * @param enc encoding name
+	 *
+	 * @return array of {@code int} with char code points
+	 */
+	default int[] read(int len, String enc) {
+		return read(0, len, enc);
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param enc encoding name
+	 * @param ofs offset to start reading
+	 *
+	 * @return array of {@code int} with char code points
+	 */
+	default int[] read(String enc, int ofs) {
+		return read(ofs, 0, enc);
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param enc encoding name
+	 *
+	 * @return array of {@code int} with char code points
+	 */
+	default int[] read(String enc) {
+		return read(0, 0, enc);
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param len length of returning array
+	 *
+	 * @return array of {@code int} with char code points
+	 */
+	default int[] read(int len) {
+		return read(0, len, getDefaultEncoding());
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @return array of {@code int} with char code points
+	 */
+	default int[] read() {
+		return read(0, 0, getDefaultEncoding());
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param ofs offset to start reading
+	 * @param len length of the returning array
+	 * @param enc encoding name
+	 *
+	 * @return String representation of the data in this file.
+	 */
+	default String reads(int ofs, int len, String enc) {
+		return new String(toChars(read(ofs, len, enc)));
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param ofs     offset to start reading
+	 * @param len     length of the returning array
+	 * @param charset the charset
+	 *
+	 * @return String representation of the data in this file.
+	 */
+	default String reads(int ofs, int len, java.nio.charset.Charset charset) {
+		return reads(ofs, len, charset.name());
+	}
+
+
+	// * Reading as String
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param ofs offset to start reading
+	 * @param len length of the returning array
+	 *
+	 * @return String representation of the data in this file.
+	 */
+	default String reads(int ofs, int len) {
+		return reads(ofs, len, getDefaultEncoding());
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param len length of the returning array
+	 * @param enc encoding name
+	 *
+	 * @return String representation of the data in this file.
+	 */
+	default String reads(int len, String enc) {
+		return reads(0, len, enc);
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param enc encoding name
+	 *
+	 * @return String representation of the data in this file.
+	 */
+	default String reads(String enc) {
+		return reads(0, 0, enc);
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @param len length of the returning array
+	 *
+	 * @return String representation of the data in this file.
+	 */
+	default String reads(int len) {
+		return reads(0, len, getDefaultEncoding());
+	}
+
+	/**
+	 * Read data from this file.
+	 *
+	 * @return String representation of the data in this file.
+	 */
+	default String reads() {
+		return reads(0, 0, getDefaultEncoding());
+	}
+
+
+	// * Reading into a buffer
+
+	/**
+	 * Read data from this file into a buffer.
+	 *
+	 * @param dst    the destination buffer, filled up to its limit
+	 * @param srcOfs offset to start reading
+	 * @param enc    encoding name
+	 *
+	 * @return the number of chars read, or {@code -1} at the end of the file
+	 */
+	int read(java.nio.CharBuffer dst, long srcOfs, String enc);
+
+	/**
+	 * Read data from this file into a buffer.
+	 *
+	 * @param dst     the destination buffer, filled up to its limit
+	 * @param srcOfs  offset to start reading
+	 * @param charset the charset
+	 *
+	 * @return the number of chars read, or {@code -1} at the end of the file
+	 */
+	default int read(java.nio.CharBuffer dst, long srcOfs, java.nio.charset.Charset charset) {
+		return read(dst, srcOfs, charset.name());
+	}
+
+	/**
+	 * Read data from this file into a buffer.
+	 *
+	 * @param dst    the destination buffer, filled up to its limit
+	 * @param srcOfs offset to start reading
+	 *
+	 * @return the number of chars read, or {@code -1} at the end of the file
+	 */
+	default int read(java.nio.CharBuffer dst, long srcOfs) {
+		return read(dst, srcOfs, getDefaultEncoding());
+	}
+
+	/**
+	 * Read data from this file into an array.
+	 *
+	 * @param dst    the destination array, filled up to its end
+	 * @param dstOff the first index of {@code dst} to fill
+	 * @param srcOfs offset to start reading
+	 *
+	 * @return the number of chars read, or {@code -1} at the end of the file
+	 */
+	default int read(char[] dst, int dstOff, long srcOfs) {
+		return read(java.nio.CharBuffer.wrap(dst, dstOff, dst.length - dstOff), srcOfs);
+	}
+
+
+	// * Writing
+
+	/**
+	 * Write a message on this file.
+	 *
+	 * @param encoding encoding name.
+	 * @param parts    parts of the message
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	boolean write(String encoding, String... parts);
+
+	/**
+	 * Write a message on this file.
+	 *
+	 * @param charset the charset
+	 * @param parts   parts of the message
+	 *
+	 * @return {@code true} if the operation succeed
+	 *
+	 * @see #write(String, String...)
+	 */
+	default boolean write(java.nio.charset.Charset charset, String... parts) {
+		return write(charset.name(), parts);
+	}
+
+	/**
+	 * Write a String on this file using current encoding.
+	 *
+	 * @param message the string to write
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	default boolean write(String message) {
+		return write(getCurrentEncoding(), message);
+	}
+
+	/**
+	 * Replace the contents of this file at once.
+	 *
+	 * <p>The message is written to a hidden sibling file, synced, and then
+	 * atomically moved over this file, the same way {@link File#moveTo}
+	 * moves files. Concurrent readers see either the old or the new
+	 * contents, never a partial write, without any locking.</p>
+	 *
+	 * @param encoding encoding name.
+	 * @param parts    parts of the message
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	boolean writeAtomic(String encoding, String... parts);
+
+	/**
+	 * Replace the contents of this file at once.
+	 *
+	 * @param charset the charset
+	 * @param parts   parts of the message
+	 *
+	 * @return {@code true} if the operation succeed
+	 *
+	 * @see #writeAtomic(String, String...)
+	 */
+	default boolean writeAtomic(java.nio.charset.Charset charset, String... parts) {
+		return writeAtomic(charset.name(), parts);
+	}
+
+	/**
+	 * Replace the contents of this file at once using current encoding.
+	 *
+	 * @param message the string to write
+	 *
+	 * @return {@code true} if the operation succeed
+	 *
+	 * @see #writeAtomic(String, String...)
+	 */
+	default boolean writeAtomic(String message) {
+		return writeAtomic(getCurrentEncoding(), message);
+	}
+
+	/**
+	 * Write a message at the end of this file.
+	 *
+	 * @param encoding encoding name.
+	 * @param parts    parts of the message
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	boolean append(String encoding, String... parts);
+
+	/**
+	 * Write a message at the end of this file.
+	 *
+	 * @param charset the charset
+	 * @param parts   parts of the message
+	 *
+	 * @return {@code true} if the operation succeed
+	 *
+	 * @see #append(String, String...)
+	 */
+	default boolean append(java.nio.charset.Charset charset, String... parts) {
+		return append(charset.name(), parts);
+	}
+
+	/**
+	 * Write a String at the end of this file using current encoding.
+	 *
+	 * @param message the string to write
+	 *
+	 * @return {@code true} if the operation succeed
+	 */
+	default boolean append(String message) {
+		return append(getCurrentEncoding(), message);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Behavioural checks of {@link Appender}.
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class AppenderTest {
+
+	/** Number of producer threads. */
+	private static final int PRODUCERS = 16;
+
+	/** Messages appended by each producer. */
+	private static final int MESSAGES = 3_000;
+
+	public static void main(final String[] args) throws Exception {
+		final var folder = Check.folder("appender");
+		try {
+			intact(folder, 100, Appender.Sync.BATCH, 0);
+			intact(folder, 100, Appender.Sync.NEVER, 250);
+			intact(folder, 1 << 16, Appender.Sync.NEVER, 0);
+			flushAndClose(folder);
+		} finally {
+			Check.delete(folder);
+		}
+		System.out.println("AppenderTest: OK");
+	}
+
+	/**
+	 * Message {@code i} of producer {@code p}, with a body made of {@code p}
+	 * so any interleaving shows; every eleventh one is {@code pad} chars
+	 * longer.
+	 */
+	private static String message(final int p, final int i, final int pad) {
+		final var body = String.valueOf((char) ('a' + p)).repeat(20 + i % 13 + (i % 11 == 5 ? pad : 0));
+		return p + " " + i + " " + body + " ñ\n";
+	}
+
+	/**
+	 * Check that every line of many concurrent producers comes out intact,
+	 * once, and in the order of its producer.
+	 */
+	private static void intact(final Path folder, final int batchSize, final Appender.Sync sync, final int pad) throws Exception {
+		final var path = folder.resolve(batchSize + "-" + sync + "-" + pad + ".log");
+		final var errors = new java.util.concurrent.ConcurrentLinkedQueue<Throwable>();
+		try (var appender = new Appender(path, StandardCharsets.UTF_8, batchSize, 0, sync)) {
+			final var threads = new Thread[PRODUCERS];
+			for (var p = 0; p < PRODUCERS; p++) {
+				final var id = p;
+				threads[p] = new Thread(() -> {
+					try {
+						for (var i = 0; i < MESSAGES; i++) appender.append(message(id, i, pad));
+					} catch (IOException | RuntimeException ex) {
+						errors.add(ex);
+					}
+				});
+				threads[p].start();
+			}
+			for (var t : threads) t.join();
+		}
+		Check.equal(0, errors.size(), "producer errors " + errors);
+		final var next = new int[PRODUCERS];
+		final var lines = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).lines().collect(java.util.stream.Collectors.toList());
+		for (var line : lines) {
+			final var p = Integer.parseInt(line.substring(0, line.indexOf(' ')));
+			Check.equal(message(p, next[p], pad), line + "\n", "line of producer " + p);
+			next[p]++;
+		}
+		Check.equal(PRODUCERS * MESSAGES, lines.size(), "every line written with batch size " + batchSize);
+	}
+
+	private static void flushAndClose(final Path folder) throws Exception {
+		final var path = folder.resolve("flush.log");
+		final var appender = new Appender(path, StandardCharsets.UTF_8, 1 << 16, 0, Appender.Sync.NEVER);
+		appender.append("first\n", "second\n");
+		appender.flush();
+		Check.equal("first\nsecond\n", Files.readString(path), "written once flushed");
+		appender.close();
+		try {
+			appender.append("late\n");
+			throw new AssertionError("append after close");
+		} catch (IOException expected) {
+			// Closed appenders take no more messages.
+		}
+		Check.equal("first\nsecond\n", Files.readString(path), "nothing written after close");
+	}
+}
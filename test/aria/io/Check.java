@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * Minimal checks shared by the behavioural tests.
+ *
+ * <p>Each test class has a {@code main} method which runs its checks and
+ * throws an {@link AssertionError} on the first failure.</p>
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class Check {
+
+	private Check() {}
+
+	static void that(final boolean condition, final String message) {
+		if (!condition) throw new AssertionError(message);
+	}
+
+	static void equal(final Object expected, final Object actual, final String message) {
+		if (!Objects.deepEquals(expected, actual)) throw new AssertionError(message + ": expected <" + expected + "> but was <" + actual + ">");
+	}
+
+	/**
+	 * Returns a new empty directory.
+	 */
+	static Path folder(final String prefix) throws IOException {
+		return Files.createTempDirectory(prefix);
+	}
+
+	/**
+	 * Delete a directory and everything in it.
+	 */
+	static void delete(final Path folder) throws IOException {
+		try (var paths = Files.walk(folder)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	/**
+	 * Returns the names of the files in a directory, sorted.
+	 */
+	static java.util.List<String> names(final Path folder) throws IOException {
+		try (var paths = Files.list(folder)) {
+			return paths.map(p -> p.getFileName().toString()).sorted().collect(java.util.stream.Collectors.toList());
+		}
+	}
+}
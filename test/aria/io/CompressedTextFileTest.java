@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Behavioural checks of {@link CompressedTextFile}.
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class CompressedTextFileTest {
+
+	public static void main(final String[] args) throws Exception {
+		final var folder = Check.folder("bgzf");
+		try {
+			randomAccess(folder);
+			append(folder);
+			unmarkedBlocks(folder);
+			replacedChars(folder);
+		} finally {
+			Check.delete(folder);
+		}
+		System.out.println("CompressedTextFileTest: OK");
+	}
+
+	/** Text of {@code n} chars which spans many blocks. */
+	private static String text(final int n) {
+		final var ret = new StringBuilder(n);
+		for (var i = 0; ret.length() < n; i++) ret.append("línea ").append(i).append('\n');
+		ret.setLength(n);
+		return ret.toString();
+	}
+
+	private static String gunzip(final Path path, final String enc) throws Exception {
+		try (var in = new GZIPInputStream(Files.newInputStream(path))) {
+			return new String(in.readAllBytes(), enc);
+		}
+	}
+
+	private static void randomAccess(final Path folder) throws Exception {
+		final var text = text(100_000);
+		final var file = new CompressedTextFile(folder.resolve("a.gz").toFile());
+		Check.that(file.write("UTF-8", text.substring(0, 30_000), text.substring(30_000)), "write");
+		Check.equal(text, file.reads(), "whole text");
+		Check.equal(text.substring(16_380, 16_400), file.reads(16_380, 20), "range across a block boundary");
+		Check.equal(text.substring(99_990), file.reads(99_990, 50), "range past the end");
+		Check.equal("", file.reads(200_000, 10), "offset past the end");
+		Check.equal(text, gunzip(file.toPath(), "UTF-8"), "readable as plain gzip");
+	}
+
+	private static void append(final Path folder) throws Exception {
+		final var file = new CompressedTextFile(folder.resolve("b.gz").toFile());
+		Check.that(file.write("UTF-8", "first\n"), "write");
+		Check.that(file.append("UTF-8", "second\n"), "append");
+		Check.equal("first\nsecond\n", file.reads(), "appended text");
+		Check.equal("second", file.reads(6, 6), "range in the appended block");
+		Check.equal("first\nsecond\n", gunzip(file.toPath(), "UTF-8"), "appended file readable as plain gzip");
+		Check.that(file.writeAtomic("UTF-8", "replaced"), "atomic write");
+		Check.equal("replaced", file.reads(), "atomically replaced text");
+	}
+
+	private static void unmarkedBlocks(final Path folder) throws Exception {
+		final var text = text(40_000);
+		final var file = new CompressedTextFile(folder.resolve("c.gz").toFile());
+		Check.that(file.write("UTF-16", text), "write");
+		Check.equal(text, file.reads(0, 0, "UTF-16"), "whole UTF-16 text");
+		Check.equal(text.substring(20_000, 20_010), file.reads(20_000, 10, "UTF-16"), "UTF-16 range");
+		Check.equal(text, gunzip(file.toPath(), "UTF-16"), "no byte order mark between blocks");
+	}
+
+	private static void replacedChars(final Path folder) throws Exception {
+		final var text = "a\uD800b" + text(20_000);
+		final var file = new CompressedTextFile(folder.resolve("d.gz").toFile());
+		Check.that(file.write("UTF-8", text), "write");
+		final var back = file.reads();
+		Check.equal(text.length(), back.length(), "unpaired surrogate replaced by one char");
+		Check.equal(back.substring(19_000, 19_010), file.reads(19_000, 10), "offsets agree with the decoded text");
+		Check.equal(new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), back, "replaced text");
+	}
+}
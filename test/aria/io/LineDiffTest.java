@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Behavioural checks of {@link LineDiff}.
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class LineDiffTest {
+
+	public static void main(final String[] args) throws Exception {
+		final var folder = Check.folder("diff");
+		try {
+			identical(folder);
+			simple(folder);
+			lineEnds(folder);
+			shortest(folder);
+		} finally {
+			Check.delete(folder);
+		}
+		System.out.println("LineDiffTest: OK");
+	}
+
+	private static List<TextFile.Hunk> diff(final Path folder, final String a, final String b) throws Exception {
+		final var from = folder.resolve("a.txt");
+		final var to = folder.resolve("b.txt");
+		Files.writeString(from, a, StandardCharsets.UTF_8);
+		Files.writeString(to, b, StandardCharsets.UTF_8);
+		final var ret = new ArrayList<TextFile.Hunk>();
+		LineDiff.diff(from, to, StandardCharsets.UTF_8, ret::add);
+		return ret;
+	}
+
+	private static List<String> lines(final String text) {
+		if (text.isEmpty()) return List.of();
+		final var ret = new ArrayList<>(Arrays.asList(text.split("\n", -1)));
+		if (text.endsWith("\n")) ret.remove(ret.size() - 1);
+		return ret;
+	}
+
+	/**
+	 * Apply hunks to the lines of the original file, checking every line
+	 * they claim to remove.
+	 */
+	private static List<String> apply(final List<String> a, final List<TextFile.Hunk> hunks) {
+		final var ret = new ArrayList<String>();
+		var at = 0;
+		for (var h : hunks) {
+			Check.that(h.getLine() >= at, "hunks in order");
+			while (at < h.getLine()) ret.add(a.get(at++));
+			Check.equal((long) ret.size(), h.getOtherLine(), "line of the hunk in the changed file");
+			for (var v : h.getRemoved()) Check.equal(a.get(at++), v, "removed line");
+			ret.addAll(h.getAdded());
+		}
+		while (at < a.size()) ret.add(a.get(at++));
+		return ret;
+	}
+
+	private static int edits(final List<TextFile.Hunk> hunks) {
+		var ret = 0;
+		for (var h : hunks) ret += h.getRemoved().size() + h.getAdded().size();
+		return ret;
+	}
+
+	/** Length of the longest common subsequence of two lists of lines. */
+	private static int lcs(final List<String> a, final List<String> b) {
+		final var t = new int[a.size() + 1][b.size() + 1];
+		for (var i = a.size() - 1; i >= 0; i--) {
+			for (var j = b.size() - 1; j >= 0; j--) {
+				t[i][j] = a.get(i).equals(b.get(j)) ? t[i + 1][j + 1] + 1 : Math.max(t[i + 1][j], t[i][j + 1]);
+			}
+		}
+		return t[0][0];
+	}
+
+	private static void identical(final Path folder) throws Exception {
+		Check.equal(List.of(), diff(folder, "a\nb\nc\n", "a\nb\nc\n"), "no hunks for equal files");
+		Check.equal(List.of(), diff(folder, "", ""), "no hunks for empty files");
+	}
+
+	private static void simple(final Path folder) throws Exception {
+		final var hunks = diff(folder, "a\nb\nc\nd\n", "a\nx\nc\nd\ne\n");
+		Check.equal(2, hunks.size(), "a change and an addition");
+		Check.equal(1L, hunks.get(0).getLine(), "line of the change");
+		Check.equal(List.of("b"), hunks.get(0).getRemoved(), "removed line");
+		Check.equal(List.of("x"), hunks.get(0).getAdded(), "added line");
+		Check.equal(4L, hunks.get(1).getLine(), "line of the addition");
+		Check.equal(List.of("e"), hunks.get(1).getAdded(), "appended line");
+		Check.equal("@@ -2 +2 @@", hunks.get(0).toString().lines().findFirst().orElse(""), "unified header");
+
+		final var all = diff(folder, "", "a\nb\n");
+		Check.equal(1, all.size(), "everything added");
+		Check.equal(List.of("a", "b"), all.get(0).getAdded(), "added lines");
+	}
+
+	private static void lineEnds(final Path folder) throws Exception {
+		final var hunks = diff(folder, "a\r\nb\r\nc\r\n", "a\r\nB\r\nc\r\n");
+		Check.equal(1, hunks.size(), "one change");
+		Check.equal(List.of("b"), hunks.get(0).getRemoved(), "carriage return left out of the line");
+		Check.equal(List.of("B"), hunks.get(0).getAdded(), "carriage return left out of the added line");
+		Check.equal(lines("a\nb\nc"), apply(lines("a\nb\n"), diff(folder, "a\nb\n", "a\nb\nc")), "last line without a line feed");
+	}
+
+	private static void shortest(final Path folder) throws Exception {
+		final var random = new java.util.Random(42);
+		for (var round = 0; round < 300; round++) {
+			final var a = new StringBuilder();
+			final var b = new StringBuilder();
+			for (var i = random.nextInt(40); i > 0; i--) a.append((char) ('a' + random.nextInt(4))).append('\n');
+			for (var i = random.nextInt(40); i > 0; i--) b.append((char) ('a' + random.nextInt(4))).append('\n');
+			final var la = lines(a.toString());
+			final var lb = lines(b.toString());
+			final var hunks = diff(folder, a.toString(), b.toString());
+			Check.equal(lb, apply(la, hunks), "hunks turn the original into the changed file, round " + round);
+			Check.equal(la.size() + lb.size() - 2 * lcs(la, lb), edits(hunks), "shortest edit script, round " + round);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Behavioural checks of {@link LineSorter}.
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class LineSorterTest {
+
+	/** Enough lines to spill several runs with the smallest budget. */
+	private static final int LINES = 20_000;
+
+	public static void main(final String[] args) throws Exception {
+		final var folder = Check.folder("sort");
+		try {
+			inMemory(folder);
+			spilled(folder);
+			byKey(folder);
+			failedInput(folder);
+			missingInput(folder);
+		} finally {
+			Check.delete(folder);
+		}
+		System.out.println("LineSorterTest: OK");
+	}
+
+	private static List<String> lines() {
+		return IntStream.range(0, LINES).mapToObj(i -> "line " + (i * 7919 % LINES) + " #" + i % 3).collect(Collectors.toList());
+	}
+
+	private static List<String> read(final Path path) throws Exception {
+		return Files.readAllLines(path, StandardCharsets.UTF_8);
+	}
+
+	/** Names of the run files left in the temporary directory. */
+	private static long leftovers() throws Exception {
+		try (var paths = Files.list(Path.of(aria.Local.TEMP))) {
+			return paths.filter(p -> p.getFileName().toString().startsWith("aria-sort-")).count();
+		}
+	}
+
+	private static void inMemory(final Path folder) throws Exception {
+		final var out = folder.resolve("small.txt");
+		new LineSorter(Comparator.comparing(CharSequence::toString), null, false, 1L << 30).sort(Stream.of("b", "c", "a", "b"), out, StandardCharsets.UTF_8);
+		Check.equal(List.of("a", "b", "b", "c"), read(out), "sorted in memory");
+	}
+
+	private static void spilled(final Path folder) throws Exception {
+		final var before = leftovers();
+		final var input = lines();
+		final var expected = new ArrayList<>(input);
+		expected.sort(Comparator.naturalOrder());
+		final var out = folder.resolve("sorted.txt");
+		new LineSorter(Comparator.comparing(CharSequence::toString), null, false, 0).sort(input.stream(), out, StandardCharsets.UTF_8);
+		Check.equal(expected, read(out), "sorted through spilled runs");
+		Check.equal(before, leftovers(), "run files deleted");
+
+		final var distinct = folder.resolve("distinct.txt");
+		final var repeated = input.stream().map(s -> s.substring(0, s.indexOf(" #")));
+		new LineSorter(Comparator.comparing(CharSequence::toString), null, true, 0).sort(Stream.concat(repeated, input.stream().map(s -> s.substring(0, s.indexOf(" #")))), distinct, StandardCharsets.UTF_8);
+		Check.equal(expected.stream().map(s -> s.substring(0, s.indexOf(" #"))).sorted().distinct().collect(Collectors.toList()), read(distinct), "distinct drops repeated lines");
+	}
+
+	private static void byKey(final Path folder) throws Exception {
+		final var input = IntStream.range(0, LINES).mapToObj(i -> (i * 7919 % 100) + " " + i).collect(Collectors.toList());
+		final var out = folder.resolve("keys.txt");
+		new LineSorter(null, s -> Long.parseLong(s.toString().substring(0, s.toString().indexOf(' '))), false, 0).sort(input.stream(), out, StandardCharsets.UTF_8);
+		final var sorted = read(out);
+		Check.equal(LINES, sorted.size(), "every line written");
+		for (var i = 1; i < sorted.size(); i++) {
+			final var a = sorted.get(i - 1).split(" ");
+			final var b = sorted.get(i).split(" ");
+			final var c = Long.compare(Long.parseLong(a[0]), Long.parseLong(b[0]));
+			Check.that(c < 0 || c == 0 && Integer.parseInt(a[1]) < Integer.parseInt(b[1]), "stable order by key at line " + i);
+		}
+	}
+
+	private static void failedInput(final Path folder) throws Exception {
+		final var before = leftovers();
+		final var input = lines();
+		final var failing = IntStream.range(0, LINES * 2).mapToObj(i -> {
+			if (i == LINES + 1) throw new IllegalStateException("broken input");
+			return input.get(i % LINES);
+		});
+		try {
+			new LineSorter(Comparator.comparing(CharSequence::toString), null, false, 0).sort(failing, folder.resolve("failed.txt"), StandardCharsets.UTF_8);
+			throw new AssertionError("the failure of the input is thrown");
+		} catch (IllegalStateException expected) {
+			Check.equal("broken input", expected.getMessage(), "failure of the input");
+		}
+		Check.equal(before, leftovers(), "run files deleted after a failure");
+		Check.that(!Files.exists(folder.resolve("failed.txt")), "no output after a failure");
+	}
+
+	private static void missingInput(final Path folder) throws Exception {
+		final var out = folder.resolve("kept.txt");
+		Files.writeString(out, "untouched");
+		final var input = new TextFile(folder.resolve("missing.txt").toFile());
+		Check.that(!input.sortLines(Comparator.comparing(CharSequence::toString), 1L << 20, new TextFile(out.toFile())), "sorting a missing file fails");
+		Check.equal("untouched", Files.readString(out), "output left alone when the input is missing");
+	}
+}
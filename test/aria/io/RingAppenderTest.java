@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Behavioural checks of {@link RingAppender}.
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class RingAppenderTest {
+
+	/** Number of producer threads. */
+	private static final int PRODUCERS = 4;
+
+	/** Messages appended by each producer. */
+	private static final int MESSAGES = 5_000;
+
+	public static void main(final String[] args) throws Exception {
+		final var folder = Check.folder("ring");
+		try {
+			for (var wait : RingAppender.Wait.values()) ordered(folder, wait);
+			spilledLongMessages(folder);
+			spillOverflow(folder);
+			dropOverflow(folder);
+			flushAndClose(folder);
+		} finally {
+			Check.delete(folder);
+		}
+		System.out.println("RingAppenderTest: OK");
+	}
+
+	/**
+	 * Message {@code i} of producer {@code p}; every seventh one is longer
+	 * than {@code pad} bytes.
+	 */
+	private static String message(final int p, final int i, final int pad) {
+		final var ret = p + " " + i;
+		return i % 7 == 3 && pad > 0 ? ret + " " + "x".repeat(pad) + "\n" : ret + "\n";
+	}
+
+	/**
+	 * Append the messages of every producer at once.
+	 *
+	 * @return the number of messages which were not dropped
+	 */
+	private static long produce(final RingAppender appender, final int pad) throws Exception {
+		final var kept = new AtomicLong();
+		final var errors = new java.util.concurrent.ConcurrentLinkedQueue<Throwable>();
+		final var threads = new Thread[PRODUCERS];
+		for (var p = 0; p < PRODUCERS; p++) {
+			final var id = p;
+			threads[p] = new Thread(() -> {
+				try {
+					for (var i = 0; i < MESSAGES; i++) if (appender.append(message(id, i, pad))) kept.incrementAndGet();
+				} catch (IOException | RuntimeException ex) {
+					errors.add(ex);
+				}
+			});
+			threads[p].start();
+		}
+		for (var t : threads) t.join();
+		Check.equal(0, errors.size(), "producer errors " + errors);
+		return kept.get();
+	}
+
+	/**
+	 * Check that the messages of each producer are in the file once each,
+	 * in the order they were appended.
+	 *
+	 * @return the number of messages in the file
+	 */
+	private static long verify(final Path path, final boolean complete) throws Exception {
+		final var next = new int[PRODUCERS];
+		var count = 0L;
+		for (var line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+			final var fields = line.split(" ");
+			final var p = Integer.parseInt(fields[0]);
+			final var i = Integer.parseInt(fields[1]);
+			if (complete) Check.equal(next[p], i, "message of producer " + p);
+			else Check.that(i >= next[p], "order of producer " + p + " at message " + i);
+			next[p] = i + 1;
+			count++;
+		}
+		if (complete) for (var p = 0; p < PRODUCERS; p++) Check.equal(MESSAGES, next[p], "messages of producer " + p);
+		return count;
+	}
+
+	private static void ordered(final Path folder, final RingAppender.Wait wait) throws Exception {
+		final var path = folder.resolve(wait + ".log");
+		try (var appender = new RingAppender(path, StandardCharsets.UTF_8, 64, 64, wait, RingAppender.Overflow.BLOCK)) {
+			produce(appender, 0);
+		}
+		Check.equal((long) PRODUCERS * MESSAGES, verify(path, true), "every message written with " + wait);
+	}
+
+	private static void spilledLongMessages(final Path folder) throws Exception {
+		final var path = folder.resolve("long.log");
+		try (var appender = new RingAppender(path, StandardCharsets.UTF_8, 64, 32, RingAppender.Wait.SLEEPING, RingAppender.Overflow.BLOCK)) {
+			produce(appender, 100);
+			Check.that(appender.getSpilled() >= (long) PRODUCERS * (MESSAGES / 7), "messages longer than a slot spilled");
+		}
+		verify(path, true);
+	}
+
+	private static void spillOverflow(final Path folder) throws Exception {
+		final var path = folder.resolve("spill.log");
+		try (var appender = new RingAppender(path, StandardCharsets.UTF_8, 2, 64, RingAppender.Wait.SLEEPING, RingAppender.Overflow.SPILL)) {
+			produce(appender, 100);
+			Check.equal(0L, appender.getDropped(), "nothing dropped when spilling");
+		}
+		verify(path, true);
+	}
+
+	private static void dropOverflow(final Path folder) throws Exception {
+		final var path = folder.resolve("drop.log");
+		final long kept;
+		final long dropped;
+		try (var appender = new RingAppender(path, StandardCharsets.UTF_8, 2, 64, RingAppender.Wait.SLEEPING, RingAppender.Overflow.DROP)) {
+			kept = produce(appender, 0);
+			dropped = appender.getDropped();
+		}
+		Check.equal((long) PRODUCERS * MESSAGES, kept + dropped, "each message kept or dropped");
+		Check.equal(kept, verify(path, false), "kept messages written in order");
+	}
+
+	private static void flushAndClose(final Path folder) throws Exception {
+		final var path = folder.resolve("flush.log");
+		final var appender = new RingAppender(path, StandardCharsets.UTF_8, 8, 64, RingAppender.Wait.BLOCKING, RingAppender.Overflow.BLOCK);
+		appender.append("first\n");
+		appender.append("x".repeat(200) + "\n");
+		appender.flush();
+		Check.equal("first\n" + "x".repeat(200) + "\n", Files.readString(path), "written once flushed");
+		appender.close();
+		try {
+			appender.append("late\n");
+			throw new AssertionError("append after close");
+		} catch (IOException expected) {
+			// Closed appenders take no more messages.
+		}
+		Check.that(!Files.readString(path).contains("late"), "nothing written after close");
+	}
+}
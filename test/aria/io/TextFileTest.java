@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2020 Alejandro Elí
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package aria.io;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Behavioural checks of {@link TextFile}.
+ *
+ * @author  Alejandro Elí
+ * @version 17/10/26
+ * @since   1.1
+ */
+final class TextFileTest {
+
+	public static void main(final String[] args) throws Exception {
+		final var folder = Check.folder("text");
+		try {
+			tail(folder);
+			positionalReads(folder);
+			writeAll(folder);
+		} finally {
+			Check.delete(folder);
+		}
+		System.out.println("TextFileTest: OK");
+	}
+
+	private static String tail(final Path folder, final String text, final Charset charset, final int lines) throws Exception {
+		final var path = folder.resolve("tail-" + charset.name() + ".txt");
+		Files.writeString(path, text, charset);
+		return new TextFile(path.toFile()).tail(lines, charset);
+	}
+
+	/**
+	 * The scan from the end, used for UTF-8, and the decoding from the start,
+	 * used for UTF-16, return the same text.
+	 */
+	private static void tail(final Path folder) throws Exception {
+		final String[][] cases = {
+			{"a\nb\nc\n", "2", "b\nc\n"},
+			{"a\nb\nc", "2", "b\nc"},
+			{"a\r\nb\r\nc\r\n", "2", "b\r\nc\r\n"},
+			{"a\r\nb\r\nc", "1", "c"},
+			{"a\nb\n", "5", "a\nb\n"},
+			{"\n\n\n", "2", "\n\n"},
+			{"only", "1", "only"},
+			{"", "3", ""}
+		};
+		for (var c : cases) {
+			final var lines = Integer.parseInt(c[1]);
+			Check.equal(c[2], tail(folder, c[0], StandardCharsets.UTF_8, lines), "mapped tail of " + c[0].replace("\n", "\\n").replace("\r", "\\r"));
+			Check.equal(c[2], tail(folder, c[0], StandardCharsets.UTF_16LE, lines), "decoded tail of " + c[0].replace("\n", "\\n").replace("\r", "\\r"));
+		}
+		final var text = new StringBuilder();
+		for (var i = 0; i < 5_000; i++) text.append("línea ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+		Check.equal(tail(folder, text.toString(), StandardCharsets.UTF_8, 1234), tail(folder, text.toString(), StandardCharsets.UTF_16LE, 1234), "long tails agree");
+	}
+
+	private static void positionalReads(final Path folder) throws Exception {
+		final var text = new StringBuilder();
+		for (var i = 0; i < 20_000; i++) text.append("línea ").append(i).append('\n');
+		final var file = new TextFile(folder.resolve("read.txt").toFile());
+		Check.that(file.write("UTF-8", text.toString()), "write");
+		final var dst = java.nio.CharBuffer.allocate(16);
+		for (var ofs : new long[] {100_000, 5, 150_000, 5, 0}) {
+			dst.clear();
+			Check.equal(16, file.read(dst, ofs, "UTF-8"), "chars read at " + ofs);
+			Check.equal(text.substring((int) ofs, (int) ofs + 16), dst.flip().toString(), "chars at " + ofs);
+		}
+		Check.that(file.write("UTF-8", "changed"), "rewrite");
+		dst.clear();
+		Check.equal(7, file.read(dst, 0, "UTF-8"), "chars read after a change");
+		Check.equal("changed", dst.flip().toString(), "new contents read after a change");
+		dst.clear();
+		Check.equal(-1, file.read(dst, 7, "UTF-8"), "end of the changed file");
+	}
+
+	private static void writeAll(final Path folder) throws Exception {
+		final var contents = new java.util.IdentityHashMap<TextFile, String>();
+		for (var i = 0; i < 50; i++) contents.put(new TextFile(folder.resolve("bulk-" + i + ".txt").toFile()), "file " + i);
+		final var missing = folder.resolve("missing").resolve("x.txt").toFile();
+		contents.put(new TextFile(missing), "a");
+		contents.put(new TextFile(missing), "b");
+		contents.put(null, "c");
+		final var batch = TextFile.writeAll(contents, 4);
+		Check.equal(50, batch.getWritten(), "files written");
+		Check.equal(3, batch.getFailures().size(), "one failure per failed entry");
+		Check.that(batch.getFailures().stream().anyMatch(e -> e.getKey() == null), "null file reported");
+		for (var i = 0; i < 50; i++) Check.equal("file " + i, Files.readString(folder.resolve("bulk-" + i + ".txt")), "contents of file " + i);
+	}
+}